@@ -0,0 +1,187 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.event.Cancellable;
+import com.ogarproject.ogar.api.event.Event;
+import com.ogarproject.ogar.api.event.EventHandler;
+import com.ogarproject.ogar.api.event.EventPriority;
+import com.ogarproject.ogar.api.event.Listener;
+
+/**
+ * Event and listener types shared by the event benchmarks.
+ */
+public final class BenchmarkEvents {
+
+    /**
+     * The number of distinct event types available through {@link #create()}.
+     */
+    public static final int EVENT_TYPES = 8;
+
+    /**
+     * Static-use class.
+     */
+    private BenchmarkEvents() {
+    }
+
+    /**
+     * Creates one instance of every benchmark event type.
+     *
+     * @return an array of {@link #EVENT_TYPES} events, each of a different
+     * class
+     */
+    public static Event[] create() {
+        return new Event[]{new Event0(), new Event1(), new Event2(), new Event3(), new Event4(), new Event5(), new Event6(), new Event7()};
+    }
+
+    public static final class Event0 extends Event {
+    }
+
+    public static final class Event1 extends Event {
+    }
+
+    public static final class Event2 extends Event {
+    }
+
+    public static final class Event3 extends Event {
+    }
+
+    public static final class Event4 extends Event {
+    }
+
+    public static final class Event5 extends Event {
+    }
+
+    public static final class Event6 extends Event {
+    }
+
+    public static final class Event7 extends Event {
+    }
+
+    /**
+     * An event that no benchmark listener handles.
+     */
+    public static final class UnhandledEvent extends Event {
+    }
+
+    public static final class CancellableEvent extends Event implements Cancellable {
+
+        private boolean cancelled;
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setCancelled(boolean cancelled) {
+            this.cancelled = cancelled;
+        }
+    }
+
+    /**
+     * Handles every benchmark event type by counting it.
+     */
+    public static final class CountingListener implements Listener {
+
+        public long count;
+
+        @EventHandler
+        public void on(Event0 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event1 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event2 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event3 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event4 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event5 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event6 event) {
+            count++;
+        }
+
+        @EventHandler
+        public void on(Event7 event) {
+            count++;
+        }
+    }
+
+    /**
+     * Handles {@link CancellableEvent} on every priority, optionally
+     * cancelling it on {@link EventPriority#LOW}.
+     */
+    public static final class CancellingListener implements Listener {
+
+        private final boolean cancel;
+        public long count;
+
+        public CancellingListener(boolean cancel) {
+            this.cancel = cancel;
+        }
+
+        @EventHandler(priority = EventPriority.LOWEST)
+        public void lowest(CancellableEvent event) {
+            count++;
+        }
+
+        @EventHandler(priority = EventPriority.LOW)
+        public void low(CancellableEvent event) {
+            event.setCancelled(cancel);
+        }
+
+        @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
+        public void normal(CancellableEvent event) {
+            count++;
+        }
+
+        @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+        public void high(CancellableEvent event) {
+            count++;
+        }
+
+        @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+        public void highest(CancellableEvent event) {
+            count++;
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void monitor(CancellableEvent event) {
+            count++;
+        }
+    }
+}
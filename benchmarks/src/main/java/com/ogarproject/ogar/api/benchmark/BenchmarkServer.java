@@ -0,0 +1,92 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.Server;
+import com.ogarproject.ogar.api.plugin.Messenger;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.PluginInfo;
+import com.ogarproject.ogar.api.plugin.PluginManager;
+import com.ogarproject.ogar.api.plugin.TimingWheelScheduler;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
+import com.ogarproject.ogar.api.world.World;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A minimal Server implementation that only provides what the benchmarks
+ * need: a plugin manager, a messenger, a scheduler, a profiler and a quiet
+ * logger.
+ */
+public class BenchmarkServer implements Server {
+
+    private final Logger logger = Logger.getLogger("OgarBenchmark");
+    private final PluginManager pluginManager = new PluginManager(this);
+    private final Messenger messenger = new Messenger();
+    private final TimingWheelScheduler scheduler = new TimingWheelScheduler(this, Runnable::run);
+    private final TickProfiler profiler = new TickProfiler(this);
+
+    public BenchmarkServer() {
+        logger.setLevel(Level.WARNING);
+    }
+
+    /**
+     * Creates and enables a new plugin instance.
+     *
+     * @return the enabled plugin
+     */
+    public Plugin createPlugin() {
+        Plugin plugin = new BenchmarkPlugin();
+        pluginManager.enablePlugin(plugin);
+        return plugin;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public PluginManager getPluginManager() {
+        return pluginManager;
+    }
+
+    @Override
+    public Messenger getMessenger() {
+        return messenger;
+    }
+
+    @Override
+    public World getWorld() {
+        throw new UnsupportedOperationException("The benchmark server has no world");
+    }
+
+    @Override
+    public TimingWheelScheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
+
+    @PluginInfo(name = "Benchmark", version = "1.0", author = "Ogar")
+    public static class BenchmarkPlugin extends Plugin {
+
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.CancellableEvent;
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.CancellingListener;
+import com.ogarproject.ogar.api.plugin.PluginManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures dispatch of a cancellable event through handlers on every
+ * priority, most of which ignore cancelled events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CancellableChainBenchmark {
+
+    @Param({"1", "10"})
+    public int listeners;
+
+    @Param({"false", "true"})
+    public boolean cancel;
+
+    private PluginManager pluginManager;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer server = new BenchmarkServer();
+        pluginManager = server.getPluginManager();
+        for (int i = 0; i < listeners; i++) {
+            pluginManager.registerEvents(server.createPlugin(), new CancellingListener(cancel));
+        }
+    }
+
+    @Benchmark
+    public CancellableEvent callEvent() {
+        CancellableEvent event = new CancellableEvent();
+        pluginManager.callEvent(event);
+        return event;
+    }
+}
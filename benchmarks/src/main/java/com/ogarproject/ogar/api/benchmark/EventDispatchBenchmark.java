@@ -0,0 +1,107 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.CountingListener;
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.Event0;
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.UnhandledEvent;
+import com.ogarproject.ogar.api.event.Event;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.PluginManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PluginManager#callEvent} with N registered listeners, each
+ * handling every one of M event types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"1", "10", "100"})
+    public int listeners;
+
+    @Param({"1", "8"})
+    public int eventTypes;
+
+    private PluginManager pluginManager;
+    private Event[] events;
+    private int next;
+    private List<Event0> batch;
+    private UnhandledEvent unhandled;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer server = new BenchmarkServer();
+        pluginManager = server.getPluginManager();
+        Plugin plugin = server.createPlugin();
+        for (int i = 0; i < listeners; i++) {
+            pluginManager.registerEvents(plugin, new CountingListener());
+        }
+
+        events = Arrays.copyOf(BenchmarkEvents.create(), eventTypes);
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new Event0());
+        }
+        unhandled = new UnhandledEvent();
+    }
+
+    @Benchmark
+    public void callEvent() {
+        Event event = events[next];
+        next = next + 1 == events.length ? 0 : next + 1;
+        pluginManager.callEvent(event);
+    }
+
+    @Benchmark
+    public void callEventWithoutListeners() {
+        pluginManager.callEvent(unhandled);
+    }
+
+    @Benchmark
+    public boolean hasListeners() {
+        return pluginManager.hasListeners(Event0.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void callEventsBatch() {
+        pluginManager.callEvents(Event0.class, batch);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.plugin.ChannelHandle;
+import com.ogarproject.ogar.api.plugin.Messenger;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.PluginMessageBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Messenger} channel lookups and registrations with many
+ * registered channels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessengerBenchmark {
+
+    @Param({"10", "1000"})
+    public int channels;
+
+    private Messenger messenger;
+    private Plugin plugin;
+    private String registered;
+    private String unregistered;
+    private ChannelHandle handle;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer server = new BenchmarkServer();
+        messenger = server.getMessenger();
+        plugin = server.createPlugin();
+        for (int i = 0; i < channels; i++) {
+            messenger.registerChannel(plugin, "Benchmark|Channel" + i);
+        }
+
+        // Fresh strings, so cached hash codes don't flatter the lookups
+        registered = new String("Benchmark|Channel" + (channels / 2));
+        unregistered = new String("Benchmark|Missing");
+        handle = messenger.getChannel(registered);
+    }
+
+    @Benchmark
+    public boolean isChannelRegistered() {
+        return messenger.isChannelRegistered(registered);
+    }
+
+    @Benchmark
+    public boolean isChannelRegisteredMiss() {
+        return messenger.isChannelRegistered(unregistered);
+    }
+
+    @Benchmark
+    public boolean isHandleRegistered() {
+        return handle.isRegistered();
+    }
+
+    @Benchmark
+    public ChannelHandle getChannelById() {
+        return messenger.getChannel(handle.getId());
+    }
+
+    @Benchmark
+    public byte[] encodeChannelTable() {
+        return messenger.encodeChannelTable();
+    }
+
+    @Benchmark
+    public String[] getAllChannelRegistrations() {
+        return messenger.getAllChannelRegistrations();
+    }
+
+    @Benchmark
+    public boolean allocatePooledBuffer() {
+        PluginMessageBuffer buffer = messenger.allocateBuffer(256);
+        buffer.getBuffer().putLong(channels).flip();
+        return buffer.release();
+    }
+
+    @Benchmark
+    public byte[] allocateArray() {
+        byte[] data = new byte[256];
+        data[0] = (byte) channels;
+        return data;
+    }
+
+    @Benchmark
+    public void registerAndUnregister() {
+        messenger.registerChannel(plugin, "Benchmark|Temporary");
+        messenger.unregisterChannel(plugin, "Benchmark|Temporary");
+    }
+}
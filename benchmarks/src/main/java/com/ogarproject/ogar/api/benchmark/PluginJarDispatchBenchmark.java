@@ -0,0 +1,125 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.Event0;
+import com.ogarproject.ogar.api.event.Listener;
+import com.ogarproject.ogar.api.plugin.ExecutorMode;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.PluginManager;
+import com.ogarproject.ogar.api.plugin.RegisteredHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PluginManager#callEvent} with listeners loaded from a plugin
+ * jar, which is how handlers are bound in a real server. The plugin is
+ * compiled separately from the benchmarks and packaged into a jar during
+ * setup, so its classes are defined by a plugin class loader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginJarDispatchBenchmark {
+
+    private static final String PLUGIN_ROOT = "benchmark-plugin/";
+    private static final String[] PLUGIN_RESOURCES = {
+        "META-INF/ogar/plugin-index.json",
+        "com/ogarproject/ogar/api/benchmark/plugin/IsolatedPlugin.class",
+        "com/ogarproject/ogar/api/benchmark/plugin/IsolatedPlugin$IsolatedListener.class"
+    };
+
+    @Param({"1", "10", "100"})
+    public int listeners;
+
+    private PluginManager pluginManager;
+    private Event0 event;
+
+    @Setup
+    public void setup() throws Throwable {
+        BenchmarkServer server = new BenchmarkServer();
+        pluginManager = server.getPluginManager();
+
+        File directory = Files.createTempDirectory("ogar-benchmark").toFile();
+        directory.deleteOnExit();
+        File jar = new File(directory, "isolated.jar");
+        jar.deleteOnExit();
+        writePluginJar(jar);
+        pluginManager.loadPlugins(directory);
+        pluginManager.enablePlugins();
+
+        Plugin plugin = pluginManager.getPlugin("IsolatedBenchmark");
+        Class<?> listenerClass = plugin.getClass().getClassLoader()
+                .loadClass("com.ogarproject.ogar.api.benchmark.plugin.IsolatedPlugin$IsolatedListener");
+        for (int i = 0; i < listeners; i++) {
+            pluginManager.registerEvents(plugin, (Listener) listenerClass.newInstance());
+        }
+
+        // Make sure this measures the path production handlers take
+        for (RegisteredHandler handler : pluginManager.getRegisteredHandlers(plugin)) {
+            if (handler.getExecutorMode() != ExecutorMode.GENERATED) {
+                throw new IllegalStateException("Plugin handler was bound as " + handler.getExecutorMode());
+            }
+        }
+        event = new Event0();
+    }
+
+    private static void writePluginJar(File jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            byte[] buffer = new byte[4096];
+            for (String resource : PLUGIN_RESOURCES) {
+                try (InputStream in = PluginJarDispatchBenchmark.class.getClassLoader().getResourceAsStream(PLUGIN_ROOT + resource)) {
+                    if (in == null) {
+                        throw new IOException("Missing benchmark plugin resource " + resource);
+                    }
+
+                    out.putNextEntry(new JarEntry(resource));
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void callEvent() {
+        pluginManager.callEvent(event);
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.world.Position;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Position} math over arrays of positions, similar to what
+ * the server does for collision and visibility checks every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+    @Param({"1024"})
+    public int positions;
+
+    private Position[] points;
+    private Position center;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        points = new Position[positions];
+        for (int i = 0; i < positions; i++) {
+            points[i] = new Position(random.nextDouble() * 6000, random.nextDouble() * 6000);
+        }
+        center = new Position(3000, 3000);
+    }
+
+    @Benchmark
+    public double distanceSquared() {
+        double sum = 0;
+        for (Position point : points) {
+            sum += point.distanceSquared(center);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double distance() {
+        double sum = 0;
+        for (Position point : points) {
+            sum += point.distance(center);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int countInRange() {
+        int count = 0;
+        for (Position point : points) {
+            if (point.distanceSquared(center.getX(), center.getY()) < 1000 * 1000) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public double moveAndScale() {
+        double sum = 0;
+        for (Position point : points) {
+            Position moved = point.add(1.5, -1.5).multiply(0.5, 0.5);
+            sum += moved.getX() + moved.getY();
+        }
+        return sum;
+    }
+}
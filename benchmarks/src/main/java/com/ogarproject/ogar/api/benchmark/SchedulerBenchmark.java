@@ -0,0 +1,77 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark;
+
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.TimingWheelScheduler;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link TimingWheelScheduler} with many pending timers, like
+ * the food, respawn and bot timers of a busy server. Scheduling and
+ * cancelling should not depend on the number of pending tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"1000", "100000"})
+    public int timers;
+
+    private TimingWheelScheduler scheduler;
+    private Plugin plugin;
+    private Random random;
+    private final Runnable task = () -> {
+    };
+
+    @Setup
+    public void setup() {
+        BenchmarkServer server = new BenchmarkServer();
+        scheduler = server.getScheduler();
+        plugin = server.createPlugin();
+        random = new Random(42);
+        for (int i = 0; i < timers; i++) {
+            scheduler.runTaskTimer(plugin, task, random.nextInt(1200), 1 + random.nextInt(1200));
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return scheduler.cancelTask(scheduler.runTaskLater(plugin, task, random.nextInt(72000)));
+    }
+
+    @Benchmark
+    public void tick() {
+        scheduler.tick();
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.benchmark.plugin;
+
+import com.ogarproject.ogar.api.benchmark.BenchmarkEvents.Event0;
+import com.ogarproject.ogar.api.event.EventHandler;
+import com.ogarproject.ogar.api.event.Listener;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import com.ogarproject.ogar.api.plugin.PluginInfo;
+
+/**
+ * A plugin that is packaged into its own jar at benchmark time, so that its
+ * listeners are defined by a plugin class loader rather than the benchmark's
+ * class loader.
+ */
+@PluginInfo(name = "IsolatedBenchmark", version = "1.0", author = "Ogar")
+public class IsolatedPlugin extends Plugin {
+
+    public static class IsolatedListener implements Listener {
+
+        public int count;
+
+        @EventHandler
+        public void onEvent(Event0 event) {
+            count++;
+        }
+    }
+}
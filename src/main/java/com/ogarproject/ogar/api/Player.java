@@ -16,7 +16,12 @@
  */
 package com.ogarproject.ogar.api;
 
+import com.google.common.base.Preconditions;
+import com.ogarproject.ogar.api.plugin.ChannelHandle;
+import com.ogarproject.ogar.api.plugin.PluginMessageBuffer;
+import com.ogarproject.ogar.api.plugin.PluginMessageFrame;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 
 public interface Player extends CellOwner {
 
@@ -50,4 +55,98 @@ public interface Player extends CellOwner {
      * capable
      */
     public boolean sendPluginMessage(String channel, byte[] data);
+
+    /**
+     * Sends a plugin message through a channel handle. Implementations may
+     * send the channel's ID instead of its name to clients that have received
+     * the {@link com.ogarproject.ogar.api.plugin.Messenger#CHANNEL_TABLE
+     * channel table}.
+     *
+     * @param channel the channel handle; must still be registered
+     * @param data additional data, up to 32767 bytes
+     * @return true if the message was sent, false if the client is not OMP
+     * capable
+     * @see #sendPluginMessage(java.lang.String, byte[])
+     */
+    public default boolean sendPluginMessage(ChannelHandle channel, byte[] data) {
+        Preconditions.checkNotNull(channel, "channel");
+        Preconditions.checkArgument(channel.isRegistered(), "Attempted to send a plugin message through an unregistered channel");
+        return sendPluginMessage(channel.getName(), data);
+    }
+
+    /**
+     * Sends the bytes between the buffer's position and limit as a plugin
+     * message. The buffer's position is not changed, and the caller keeps
+     * ownership of it; implementations must not hold on to it after
+     * returning.
+     *
+     * @param channel the channel name to use; must be registered with Messenger
+     * @param data the payload, up to 32767 bytes
+     * @return true if the message was sent, false if the client is not OMP
+     * capable
+     * @see #sendPluginMessage(java.lang.String, byte[])
+     */
+    public default boolean sendPluginMessage(String channel, ByteBuffer data) {
+        Preconditions.checkNotNull(data, "data");
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return sendPluginMessage(channel, bytes);
+    }
+
+    /**
+     * @see #sendPluginMessage(java.lang.String, java.nio.ByteBuffer)
+     */
+    public default boolean sendPluginMessage(ChannelHandle channel, ByteBuffer data) {
+        Preconditions.checkNotNull(channel, "channel");
+        Preconditions.checkArgument(channel.isRegistered(), "Attempted to send a plugin message through an unregistered channel");
+        return sendPluginMessage(channel.getName(), data);
+    }
+
+    /**
+     * Sends a pooled buffer as a plugin message, taking over one of its
+     * references. The buffer is released once the message has been written,
+     * which may be after this method returns; callers that still need the
+     * buffer must {@link PluginMessageBuffer#retain() retain} it first.
+     *
+     * @param channel the channel handle; must still be registered
+     * @param data the payload, up to 32767 bytes
+     * @return true if the message was sent, false if the client is not OMP
+     * capable
+     */
+    public default boolean sendPluginMessage(ChannelHandle channel, PluginMessageBuffer data) {
+        Preconditions.checkNotNull(data, "data");
+        try {
+            return sendPluginMessage(channel, data.getBuffer());
+        } finally {
+            data.release();
+        }
+    }
+
+    /**
+     * @see #sendPluginMessage(com.ogarproject.ogar.api.plugin.ChannelHandle,
+     * com.ogarproject.ogar.api.plugin.PluginMessageBuffer)
+     */
+    public default boolean sendPluginMessage(String channel, PluginMessageBuffer data) {
+        Preconditions.checkNotNull(data, "data");
+        try {
+            return sendPluginMessage(channel, data.getBuffer());
+        } finally {
+            data.release();
+        }
+    }
+
+    /**
+     * Sends a pre-built frame, as used by
+     * {@link com.ogarproject.ogar.api.plugin.Messenger#broadcast(PluginMessageFrame, Iterable, java.util.function.Predicate)}.
+     * Implementations should send the frame's cached wire encoding rather
+     * than encoding it again for every player.
+     *
+     * @param frame the frame to send
+     * @return true if the message was sent, false if the client is not OMP
+     * capable
+     */
+    public default boolean sendPluginMessageFrame(PluginMessageFrame frame) {
+        Preconditions.checkNotNull(frame, "frame");
+        return sendPluginMessage(frame.getChannel(), frame.getPayload());
+    }
 }
@@ -19,6 +19,7 @@ package com.ogarproject.ogar.api;
 import com.ogarproject.ogar.api.plugin.Messenger;
 import com.ogarproject.ogar.api.plugin.PluginManager;
 import com.ogarproject.ogar.api.plugin.Scheduler;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
 import com.ogarproject.ogar.api.world.World;
 import java.util.logging.Logger;
 
@@ -61,4 +62,12 @@ public interface Server {
      * @return scheduler associated with the server
      */
     public Scheduler getScheduler();
+
+    /**
+     * Gets the server's tick profiler, which reports the tick rate and where
+     * tick time is spent.
+     *
+     * @return profiler associated with the server
+     */
+    public TickProfiler getProfiler();
 }
@@ -0,0 +1,28 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.event;
+
+/**
+ * An AsyncEvent is an event that may be dispatched outside of the server tick
+ * using {@link com.ogarproject.ogar.api.plugin.PluginManager#callEventAsync}.
+ * Handlers for these events may therefore run on any thread, and are free to
+ * perform slow work such as network requests without stalling the server.
+ * Handlers are still called one at a time, in priority order.
+ */
+public abstract class AsyncEvent extends Event {
+
+}
@@ -20,7 +20,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 /**
- * Denotes a method that handles an event.
+ * Denotes a method that handles an event. The method's single parameter
+ * determines which events it receives: a handler is also called for every
+ * subclass of its parameter type, and a handler for an interface such as
+ * {@link Cancellable} is called for every event that implements it.
  */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface EventHandler {
@@ -41,4 +44,31 @@ public @interface EventHandler {
      * ignored
      */
     public boolean ignoreCancelled() default false;
+
+    /**
+     * If this value is set to true, this event handler receives a
+     * {@code List} of events instead of a single event, for example
+     * {@code void onNameChange(List<PlayerNameChangeEvent> events)}. Batches are passed by
+     * {@link com.ogarproject.ogar.api.plugin.PluginManager#callEvents}; events
+     * called individually are passed as a list of one. If cancelled events are
+     * ignored, they are left out of the list. The list must not be modified
+     * or retained after the handler returns.
+     *
+     * @return boolean indicating whether or not this handler receives batches
+     * of events
+     */
+    public boolean batch() default false;
+
+    /**
+     * Restricts this event handler to events with one of the specified keys.
+     * Keys only apply to events that implement {@link KeyedEvent}; for
+     * example, the key of a
+     * {@link com.ogarproject.ogar.api.event.plugin.PluginMessageEvent} is its
+     * channel. Handlers are indexed by key, so a handler is never invoked for
+     * events with other keys. By default, a handler receives events with any
+     * key.
+     *
+     * @return the keys this handler is restricted to
+     */
+    public String[] keys() default {};
 }
@@ -0,0 +1,116 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.event;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * An EventPool recycles instances of a {@link PooledEvent} to avoid allocating
+ * a new event for every dispatch of a frequently called event. Each thread
+ * keeps its own free list, so acquiring and releasing events does not require
+ * any synchronization.
+ *
+ * <pre>
+ * MyEvent event = pool.acquire();
+ * event.setup(...);
+ * pluginManager.callEvent(event);
+ * event.release();
+ * </pre>
+ *
+ * In debug mode, released events are never reused. Any handler that kept a
+ * reference to an event and uses it later will then fail in
+ * {@link PooledEvent#checkActive()}, with the stack trace of the release
+ * attached. Debug mode is enabled by default when the system property
+ * {@code ogar.debugEventPools} is set to true.
+ *
+ * @param <E> the type of event in this pool
+ */
+public class EventPool<E extends PooledEvent> {
+
+    private final Supplier<E> factory;
+    private final int capacity;
+    private final ThreadLocal<ArrayDeque<E>> freeEvents = ThreadLocal.withInitial(ArrayDeque::new);
+    private volatile boolean debug = Boolean.getBoolean("ogar.debugEventPools");
+
+    /**
+     * Creates a new event pool.
+     *
+     * @param factory creates new events when a thread's free list is empty
+     * @param capacity the maximum number of free events kept per thread
+     */
+    public EventPool(Supplier<E> factory, int capacity) {
+        Preconditions.checkNotNull(factory, "factory");
+        Preconditions.checkArgument(capacity >= 0, "capacity must not be negative");
+        this.factory = factory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a free event from this thread's free list, or creates a new one if
+     * there is none.
+     *
+     * @return an event in its reset state
+     */
+    public E acquire() {
+        E event = freeEvents.get().pollFirst();
+        if (event == null) {
+            event = factory.get();
+            event.pool = this;
+        }
+
+        event.released = false;
+        event.releaseSite = null;
+        return event;
+    }
+
+    /**
+     * Resets an event and returns it to the current thread's free list.
+     *
+     * @param event the event to release
+     * @throws IllegalStateException if the event was already released
+     */
+    public void release(E event) {
+        Preconditions.checkNotNull(event, "event");
+        Preconditions.checkArgument(event.pool == this, "Event does not belong to this pool");
+        if (event.released) {
+            throw new IllegalStateException("Pooled event " + event.getClass().getSimpleName() + " was released twice", event.releaseSite);
+        }
+
+        event.reset();
+        event.released = true;
+        if (debug) {
+            // Never reuse the event, so stale references keep failing
+            event.releaseSite = new Throwable("Event released here");
+            return;
+        }
+
+        ArrayDeque<E> free = freeEvents.get();
+        if (free.size() < capacity) {
+            free.addFirst(event);
+        }
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.event;
+
+/**
+ * A KeyedEvent is an event that carries a key, such as the channel of a plugin
+ * message. Handlers can be restricted to specific keys with
+ * {@link EventHandler#keys()}, in which case they are only called for events
+ * with one of those keys. Handlers are indexed by key when they are
+ * registered, so handlers for other keys cost nothing during dispatch.
+ */
+public interface KeyedEvent {
+
+    /**
+     * Gets the key of this event. Enum-valued keys should use
+     * {@link Enum#name()}.
+     *
+     * @return the event's key, or null if it has none
+     */
+    public String getEventKey();
+}
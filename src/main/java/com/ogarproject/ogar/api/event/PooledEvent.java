@@ -0,0 +1,73 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.event;
+
+/**
+ * A PooledEvent is a mutable event that can be recycled through an
+ * {@link EventPool} instead of being allocated for every dispatch. Handlers
+ * must not keep a reference to a pooled event after they return, since the
+ * same instance will be reused for a later event.
+ * <p>
+ * Implementations should call {@link #checkActive()} from their accessors,
+ * which allows an {@link EventPool} in debug mode to detect handlers that use
+ * an event after it has been released.
+ */
+public abstract class PooledEvent extends Event {
+
+    EventPool<?> pool;
+    boolean released;
+    Throwable releaseSite;
+
+    /**
+     * Clears all state of this event so that it can be reused. This is called
+     * when the event is released back to its pool.
+     */
+    protected abstract void reset();
+
+    /**
+     * Ensures that this event has not been released back to its pool.
+     *
+     * @throws IllegalStateException if this event has been released
+     */
+    protected final void checkActive() {
+        if (released) {
+            throw new IllegalStateException("Pooled event " + getClass().getSimpleName() + " was used after it was released", releaseSite);
+        }
+    }
+
+    /**
+     * Checks if this event has been released back to its pool.
+     *
+     * @return true if the event has been released
+     */
+    public final boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Releases this event back to the pool it was acquired from. This must
+     * only be done once dispatch has finished.
+     */
+    @SuppressWarnings("unchecked")
+    public final void release() {
+        if (pool == null) {
+            return;
+        }
+
+        ((EventPool<PooledEvent>) pool).release(this);
+    }
+}
@@ -16,11 +16,11 @@
  */
 package com.ogarproject.ogar.api.event.player;
 
+import com.ogarproject.ogar.api.event.AsyncEvent;
 import com.ogarproject.ogar.api.event.Cancellable;
-import com.ogarproject.ogar.api.event.Event;
 import java.net.SocketAddress;
 
-public class PlayerConnectingEvent extends Event implements Cancellable {
+public class PlayerConnectingEvent extends AsyncEvent implements Cancellable {
 
     private final SocketAddress address;
     private final int protocolVersion;
@@ -16,24 +16,103 @@
  */
 package com.ogarproject.ogar.api.event.plugin;
 
+import com.ogarproject.ogar.api.Player;
 import com.ogarproject.ogar.api.event.Event;
+import com.ogarproject.ogar.api.event.KeyedEvent;
+import java.nio.ByteBuffer;
 
-public class PluginMessageEvent extends Event {
+public class PluginMessageEvent extends Event implements KeyedEvent {
 
+    private final Player player;
     private final String channel;
-    private final byte[] data;
+    private final ByteBuffer buffer;
+    private byte[] data;
 
     public PluginMessageEvent(String channel, byte[] data) {
+        this(null, channel, data);
+    }
+
+    public PluginMessageEvent(Player player, String channel, byte[] data) {
+        this.player = player;
         this.channel = channel;
         this.data = data;
+        this.buffer = data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates an event whose payload is the bytes between the buffer's
+     * position and limit. The buffer is not copied, so the server must not
+     * reuse it until the event has been dispatched.
+     *
+     * @param channel the channel the message was received on
+     * @param data the payload
+     */
+    public PluginMessageEvent(String channel, ByteBuffer data) {
+        this(null, channel, data);
+    }
+
+    /**
+     * @see #PluginMessageEvent(String, ByteBuffer)
+     */
+    public PluginMessageEvent(Player player, String channel, ByteBuffer data) {
+        this.player = player;
+        this.channel = channel;
+        this.buffer = data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the player that sent this message.
+     *
+     * @return the sender, or null if the server did not say which player sent
+     * the message
+     */
+    public Player getPlayer() {
+        return player;
     }
 
     public String getChannel() {
         return channel;
     }
 
+    /**
+     * Gets the payload as an array. This is not a copy: it is either the array
+     * the event was created with, or an array copied once from the buffer and
+     * then shared by every handler of the event, so handlers must not modify
+     * it. Handlers that only read the payload should prefer
+     * {@link #getBuffer()}, which never copies it.
+     *
+     * @return the payload, shared with the other handlers, or null if the
+     * event was created without one
+     */
     public byte[] getData() {
+        if (data == null && buffer != null) {
+            data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+        }
         return data;
     }
 
+    /**
+     * Gets a read-only view of the payload. The view is only valid while the
+     * event is being dispatched; handlers that keep the payload must copy it.
+     *
+     * @return a new read-only view positioned at the start of the payload, or
+     * null if the event was created without one
+     */
+    public ByteBuffer getBuffer() {
+        return buffer == null ? null : buffer.duplicate();
+    }
+
+    /**
+     * Gets the key of this event, which is its channel. Handlers can use
+     * {@code @EventHandler(keys = "MyPlugin|Channel")} to only receive
+     * messages on their own channels.
+     *
+     * @return the channel of this message
+     */
+    @Override
+    public String getEventKey() {
+        return channel;
+    }
+
 }
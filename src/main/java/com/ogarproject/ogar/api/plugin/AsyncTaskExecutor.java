@@ -0,0 +1,322 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ogarproject.ogar.api.Server;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Runs asynchronous tasks on behalf of plugins, with a bulkhead per plugin. A
+ * bulkhead limits how many of a plugin's tasks run at the same time and how
+ * many more may wait for their turn, so a plugin doing slow blocking work
+ * can't take over the threads every other plugin relies on. Tasks beyond
+ * the queue limit are rejected.
+ * <p>
+ * By default, tasks run on virtual threads when the JVM supports them, and on
+ * a bounded pool of daemon threads otherwise.
+ */
+public class AsyncTaskExecutor {
+
+    private final Server server;
+    private final Executor executor;
+    private final Map<Plugin, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private volatile int defaultMaxConcurrency = 4;
+    private volatile int defaultMaxQueued = 1024;
+
+    /**
+     * Creates an executor backed by virtual threads if available, or a
+     * bounded thread pool otherwise.
+     *
+     * @param server the server, used for logging task failures
+     */
+    public AsyncTaskExecutor(Server server) {
+        this(server, createDefaultExecutor());
+    }
+
+    /**
+     * Creates an executor backed by the specified executor.
+     *
+     * @param server the server, used for logging task failures
+     * @param executor the executor that runs the tasks
+     */
+    public AsyncTaskExecutor(Server server, Executor executor) {
+        Preconditions.checkNotNull(server, "server");
+        Preconditions.checkNotNull(executor, "executor");
+        this.server = server;
+        this.executor = executor;
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            // Looked up reflectively, as the API targets Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // Virtual threads are not available
+        }
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("Ogar Scheduler Async Thread #%d").setDaemon(true).build());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Runs a task for a plugin, or queues it if the plugin already has as
+     * many tasks running as its bulkhead allows.
+     *
+     * @param plugin the plugin that owns the task
+     * @param task the task to run
+     * @return true if the task was accepted, false if the plugin's queue is
+     * full
+     */
+    public boolean execute(Plugin plugin, Runnable task) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkNotNull(task, "task");
+
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(plugin, p -> new Bulkhead(defaultMaxConcurrency, defaultMaxQueued));
+        QueuedTask queued = new QueuedTask(task, System.nanoTime());
+        synchronized (bulkhead) {
+            if (bulkhead.running >= bulkhead.maxConcurrency) {
+                if (bulkhead.queue.size() >= bulkhead.maxQueued) {
+                    bulkhead.rejected++;
+                    return false;
+                }
+
+                bulkhead.queue.add(queued);
+                return true;
+            }
+            bulkhead.running++;
+        }
+
+        dispatch(plugin, bulkhead, queued);
+        return true;
+    }
+
+    private void dispatch(Plugin plugin, Bulkhead bulkhead, QueuedTask queued) {
+        try {
+            executor.execute(() -> run(plugin, bulkhead, queued));
+        } catch (RejectedExecutionException ex) {
+            server.getLogger().log(Level.SEVERE, "Could not run an async task of plugin " + plugin.getPluginInfo().name(), ex);
+            finished(plugin, bulkhead);
+        }
+    }
+
+    private void run(Plugin plugin, Bulkhead bulkhead, QueuedTask queued) {
+        bulkhead.waitTimes.record(System.nanoTime() - queued.queuedAt);
+        try {
+            queued.task.run();
+        } catch (Throwable t) {
+            server.getLogger().log(Level.SEVERE, "Error while running an async task of plugin " + plugin.getPluginInfo().name(), t);
+        }
+        finished(plugin, bulkhead);
+    }
+
+    private void finished(Plugin plugin, Bulkhead bulkhead) {
+        // Queued tasks are handed back to the executor rather than run here, so other plugins get their turn
+        QueuedTask next;
+        synchronized (bulkhead) {
+            bulkhead.completed++;
+            next = bulkhead.queue.poll();
+            if (next == null) {
+                bulkhead.running--;
+                return;
+            }
+        }
+        dispatch(plugin, bulkhead, next);
+    }
+
+    /**
+     * Sets the bulkhead limits of a plugin.
+     *
+     * @param plugin the plugin
+     * @param maxConcurrency the maximum number of the plugin's tasks that run
+     * at the same time
+     * @param maxQueued the maximum number of the plugin's tasks that wait for
+     * a turn before further tasks are rejected
+     */
+    public void setLimits(Plugin plugin, int maxConcurrency, int maxQueued) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkArgument(maxConcurrency > 0, "Concurrency must be positive");
+        Preconditions.checkArgument(maxQueued >= 0, "Queue size must not be negative");
+
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(plugin, p -> new Bulkhead(maxConcurrency, maxQueued));
+        synchronized (bulkhead) {
+            bulkhead.maxConcurrency = maxConcurrency;
+            bulkhead.maxQueued = maxQueued;
+        }
+    }
+
+    /**
+     * Sets the bulkhead limits of plugins that have no limits of their own.
+     *
+     * @param maxConcurrency the maximum number of a plugin's tasks that run at
+     * the same time
+     * @param maxQueued the maximum number of a plugin's tasks that wait for a
+     * turn before further tasks are rejected
+     */
+    public void setDefaultLimits(int maxConcurrency, int maxQueued) {
+        Preconditions.checkArgument(maxConcurrency > 0, "Concurrency must be positive");
+        Preconditions.checkArgument(maxQueued >= 0, "Queue size must not be negative");
+        this.defaultMaxConcurrency = maxConcurrency;
+        this.defaultMaxQueued = maxQueued;
+    }
+
+    /**
+     * Gets the number of a plugin's tasks that are currently running.
+     *
+     * @param plugin the plugin
+     * @return the number of running tasks
+     */
+    public int getRunning(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.get(plugin);
+        if (bulkhead == null) {
+            return 0;
+        }
+        synchronized (bulkhead) {
+            return bulkhead.running;
+        }
+    }
+
+    /**
+     * Gets the number of a plugin's tasks that are waiting for a turn.
+     *
+     * @param plugin the plugin
+     * @return the queue depth of the plugin
+     */
+    public int getQueued(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.get(plugin);
+        if (bulkhead == null) {
+            return 0;
+        }
+        synchronized (bulkhead) {
+            return bulkhead.queue.size();
+        }
+    }
+
+    /**
+     * Gets the number of a plugin's tasks that were rejected because its
+     * queue was full.
+     *
+     * @param plugin the plugin
+     * @return the number of rejected tasks
+     */
+    public long getRejected(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.get(plugin);
+        if (bulkhead == null) {
+            return 0;
+        }
+        synchronized (bulkhead) {
+            return bulkhead.rejected;
+        }
+    }
+
+    /**
+     * Gets the number of a plugin's tasks that have finished running.
+     *
+     * @param plugin the plugin
+     * @return the number of completed tasks
+     */
+    public long getCompleted(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.get(plugin);
+        if (bulkhead == null) {
+            return 0;
+        }
+        synchronized (bulkhead) {
+            return bulkhead.completed;
+        }
+    }
+
+    /**
+     * Gets how long a plugin's tasks waited between being submitted and
+     * starting to run.
+     *
+     * @param plugin the plugin
+     * @return the wait times of the plugin's tasks, or null if the plugin has
+     * not submitted any tasks
+     */
+    public TimingHistogram getWaitTimes(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.get(plugin);
+        return bulkhead == null ? null : bulkhead.waitTimes;
+    }
+
+    /**
+     * Discards a plugin's queued tasks and its metrics. Tasks that are already
+     * running are not interrupted.
+     *
+     * @param plugin the plugin
+     * @return the queued tasks that were discarded without running
+     */
+    List<Runnable> remove(Plugin plugin) {
+        Bulkhead bulkhead = bulkheads.remove(plugin);
+        if (bulkhead == null) {
+            return Collections.emptyList();
+        }
+
+        List<Runnable> discarded = new ArrayList<>();
+        synchronized (bulkhead) {
+            for (QueuedTask queued : bulkhead.queue) {
+                discarded.add(queued.task);
+            }
+            bulkhead.queue.clear();
+        }
+        return discarded;
+    }
+
+    private static final class Bulkhead {
+
+        final ArrayDeque<QueuedTask> queue = new ArrayDeque<>();
+        final TimingHistogram waitTimes = new TimingHistogram();
+        int maxConcurrency;
+        int maxQueued;
+        int running;
+        long rejected;
+        long completed;
+
+        Bulkhead(int maxConcurrency, int maxQueued) {
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    private static final class QueuedTask {
+
+        final Runnable task;
+        final long queuedAt;
+
+        QueuedTask(Runnable task, long queuedAt) {
+            this.task = task;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+/**
+ * A ChannelHandle identifies a registered OMP channel by a compact integer ID
+ * assigned by the {@link Messenger}. Sending through a handle avoids looking
+ * up and checking the channel name on every message, and lets the server
+ * send the ID instead of the name to clients that have received the
+ * {@link Messenger#CHANNEL_TABLE channel table}.
+ * <p>
+ * A handle becomes invalid once its channel is no longer registered by any
+ * plugin. Its ID is never assigned to another channel.
+ */
+public final class ChannelHandle {
+
+    private final String name;
+    private final int id;
+    private volatile boolean registered = true;
+    // Copied on write by the Messenger, read without locking when dispatching
+    volatile Messenger.IncomingHandler[] incomingHandlers = Messenger.NO_HANDLERS;
+    // The number of plugins that registered this channel, guarded by the Messenger's registry lock
+    int references;
+
+    ChannelHandle(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Checks if this handle's channel is still registered.
+     *
+     * @return true if the handle can be used to send messages
+     */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    void invalidate() {
+        registered = false;
+        incomingHandlers = Messenger.NO_HANDLERS;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelHandle{name=" + name + ", id=" + id + "}";
+    }
+}
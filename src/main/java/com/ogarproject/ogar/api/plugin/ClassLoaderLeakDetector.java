@@ -0,0 +1,185 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Reports plugin class loaders that are still reachable some time after their
+ * plugins were unloaded. A loader that can't be collected keeps every class of
+ * its plugin in memory, which usually means something still references the
+ * plugin, such as a thread it started or a callback it registered elsewhere.
+ * <p>
+ * The detector never forces a garbage collection, since a full collection
+ * would stall the server. Loaders are dropped as soon as the collector
+ * enqueues them, and a loader is only reported once the grace period has
+ * passed and at least one old generation or full collection has run since it
+ * was unloaded. Young collections are not counted, since they rarely unload
+ * classes.
+ */
+final class ClassLoaderLeakDetector {
+
+    private static final List<GarbageCollectorMXBean> OLD_COLLECTORS = oldCollectors();
+
+    private final Logger logger;
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+    private final Set<LoaderReference> watched = ConcurrentHashMap.newKeySet();
+    private volatile long gracePeriodMillis = TimeUnit.MINUTES.toMillis(5);
+    private ScheduledExecutorService executor;
+
+    ClassLoaderLeakDetector(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Starts watching a class loader that should become unreachable. If it
+     * has not been collected after the grace period, a warning is logged.
+     *
+     * @param loader the closed class loader
+     * @param name a name identifying the loader in the warning
+     */
+    void watch(ClassLoader loader, String name) {
+        LoaderReference reference = new LoaderReference(loader, name, queue, collectionCount());
+        watched.add(reference);
+        schedule(reference);
+    }
+
+    private void schedule(LoaderReference reference) {
+        executor().schedule(() -> check(reference), gracePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(LoaderReference reference) {
+        expunge();
+        if (!watched.contains(reference) || reference.reported) {
+            return;
+        }
+
+        if (collectionCount() == reference.collections) {
+            // The old generation has not been collected yet, so the loader had no chance to be; check again later
+            schedule(reference);
+            return;
+        }
+
+        reference.reported = true;
+        logger.warning("The class loader of " + reference.name + " is still reachable " + TimeUnit.MILLISECONDS.toSeconds(gracePeriodMillis)
+                + " seconds after it was unloaded; its classes can not be garbage collected");
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : OLD_COLLECTORS) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Finds the collectors that collect the old generation, falling back to
+     * every collector if none can be recognized.
+     */
+    private static List<GarbageCollectorMXBean> oldCollectors() {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        List<GarbageCollectorMXBean> old = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : collectors) {
+            // G1's young collector also lists the old pool, and ZGC and Shenandoah report pauses apart from their cycles
+            String name = collector.getName();
+            if (name.contains("Young") || name.endsWith("Pauses")) {
+                continue;
+            }
+
+            for (String pool : collector.getMemoryPoolNames()) {
+                String lower = pool.toLowerCase(Locale.ROOT);
+                if (!lower.contains("eden") && !lower.contains("survivor") && !lower.contains("nursery")) {
+                    old.add(collector);
+                    break;
+                }
+            }
+        }
+        return old.isEmpty() ? collectors : old;
+    }
+
+    private void expunge() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = queue.poll()) != null) {
+            watched.remove((LoaderReference) reference);
+        }
+    }
+
+    /**
+     * Gets the names of the class loaders that have been reported as leaked
+     * and are still reachable.
+     *
+     * @return the names of the leaked class loaders
+     */
+    Set<String> getLeaks() {
+        expunge();
+        return watched.stream().filter(reference -> reference.reported).map(reference -> reference.name).collect(Collectors.toSet());
+    }
+
+    /**
+     * Gets how long an unloaded class loader may stay reachable before it is
+     * reported.
+     *
+     * @param unit the unit to return the grace period in
+     * @return the grace period
+     */
+    long getGracePeriod(TimeUnit unit) {
+        return unit.convert(gracePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void setGracePeriod(long gracePeriod, TimeUnit unit) {
+        Preconditions.checkArgument(gracePeriod > 0, "Grace period must be positive");
+        this.gracePeriodMillis = unit.toMillis(gracePeriod);
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("Ogar Leak Detector Thread").setDaemon(true).build());
+        }
+        return executor;
+    }
+
+    private static final class LoaderReference extends WeakReference<ClassLoader> {
+
+        final String name;
+        final long collections;
+        volatile boolean reported;
+
+        LoaderReference(ClassLoader loader, String name, ReferenceQueue<ClassLoader> queue, long collections) {
+            super(loader, queue);
+            this.name = name;
+            this.collections = collections;
+        }
+    }
+}
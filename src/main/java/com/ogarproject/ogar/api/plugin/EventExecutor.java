@@ -0,0 +1,37 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.ogarproject.ogar.api.event.Listener;
+
+/**
+ * An EventExecutor invokes a single event handler method on its listener. One
+ * executor is bound per handler when its listener is registered.
+ */
+@FunctionalInterface
+public interface EventExecutor {
+
+    /**
+     * Invokes the handler method on the listener.
+     *
+     * @param listener the listener instance that declares the handler
+     * @param event the event to pass to the handler, or a list of events if
+     * the handler is a batch handler
+     * @throws Throwable any exception thrown by the handler itself
+     */
+    public void execute(Listener listener, Object event) throws Throwable;
+}
@@ -0,0 +1,143 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.ogarproject.ogar.api.event.Listener;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Factory methods that bind {@link EventExecutor} instances to handler
+ * methods.
+ */
+final class EventExecutors {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType EXECUTE_TYPE = MethodType.methodType(void.class, Listener.class, Object.class);
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    /**
+     * Static-use class.
+     */
+    private EventExecutors() {
+    }
+
+    /**
+     * Generates an executor class for the specified handler method using
+     * {@link LambdaMetafactory}.
+     *
+     * @param method the handler method
+     * @return the generated executor, or null if one could not be generated
+     */
+    static EventExecutor generate(Method method) {
+        if (Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+
+        try {
+            Class<?> listenerClass = method.getDeclaringClass();
+            // Lookups only keep full privilege within their own loader, so plugin classes need their loader's lookup
+            MethodHandles.Lookup caller = listenerClass.getClassLoader() instanceof PluginClassLoader
+                    ? ((PluginClassLoader) listenerClass.getClassLoader()).getLookup() : LOOKUP;
+            if (caller == null) {
+                return null;
+            }
+
+            MethodHandles.Lookup lookup;
+            if (PRIVATE_LOOKUP_IN != null) {
+                // Java 9+, define the executor alongside the listener class
+                lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, listenerClass, caller);
+            } else if (Modifier.isPublic(listenerClass.getModifiers()) && Modifier.isPublic(method.getModifiers())
+                    && isVisible(listenerClass, caller) && isVisible(method.getParameterTypes()[0], caller)) {
+                lookup = caller;
+            } else {
+                return null;
+            }
+
+            MethodHandle target = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "execute", MethodType.methodType(EventExecutor.class),
+                    EXECUTE_TYPE, target, MethodType.methodType(void.class, listenerClass, method.getParameterTypes()[0]));
+            return (EventExecutor) site.getTarget().invoke();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Binds an executor that calls the specified handler method through a
+     * method handle.
+     *
+     * @param method the handler method, which must already be accessible
+     * @return the executor, or null if the method could not be unreflected
+     */
+    static EventExecutor methodHandle(Method method) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException ex) {
+            return null;
+        }
+
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Listener.class);
+        }
+
+        MethodHandle adapted = handle.asType(EXECUTE_TYPE);
+        return (listener, event) -> {
+            adapted.invokeExact(listener, event);
+        };
+    }
+
+    /**
+     * Binds an executor that calls the specified handler method through
+     * reflection.
+     *
+     * @param method the handler method, which must already be accessible
+     * @return the executor
+     */
+    static EventExecutor reflect(Method method) {
+        return (listener, event) -> {
+            try {
+                method.invoke(listener, event);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        };
+    }
+
+    private static boolean isVisible(Class<?> clazz, MethodHandles.Lookup lookup) {
+        try {
+            return Class.forName(clazz.getName(), false, lookup.lookupClass().getClassLoader()) == clazz;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
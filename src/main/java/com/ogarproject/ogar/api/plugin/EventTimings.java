@@ -0,0 +1,169 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.base.Preconditions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventTimings measures how long event handlers take. Only one in every
+ * {@link #getSampleInterval() sample interval} invocations of each handler is
+ * timed, which keeps the overhead low enough to leave enabled on a live
+ * server. Samples are aggregated per handler, per plugin and per event class.
+ * Sampled invocations that exceed the slow handler threshold are logged.
+ */
+public final class EventTimings {
+
+    // Returned for plugins and event classes without samples, and never recorded into
+    private static final TimingHistogram EMPTY = new TimingHistogram();
+
+    private final PluginManager pluginManager;
+    private final Map<Plugin, TimingHistogram> pluginTimings = new ConcurrentHashMap<>();
+    private final Map<Class<?>, TimingHistogram> eventTimings = new ConcurrentHashMap<>();
+    private volatile int sampleInterval = 100;
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    EventTimings(PluginManager pluginManager) {
+        this.pluginManager = pluginManager;
+    }
+
+    /**
+     * Checks if the next invocation of the specified handler should be timed.
+     */
+    boolean shouldSample(RegisteredHandler handler) {
+        int interval = sampleInterval;
+        if (interval == 0) {
+            return false;
+        }
+
+        // A new handler's first call includes class initialization and linking, so start counting down from there
+        if (handler.sampleCountdown == 0) {
+            handler.sampleCountdown = interval;
+            return false;
+        }
+
+        // Races on the countdown only skew which invocation gets sampled
+        if (--handler.sampleCountdown > 0) {
+            return false;
+        }
+        handler.sampleCountdown = interval;
+        return true;
+    }
+
+    void record(RegisteredHandler handler, Class<?> eventClass, long nanos) {
+        handler.getTimings().record(nanos);
+        pluginTimings.computeIfAbsent(handler.getPlugin(), p -> new TimingHistogram()).record(nanos);
+        eventTimings.computeIfAbsent(eventClass, c -> new TimingHistogram()).record(nanos);
+
+        if (nanos > slowThresholdNanos) {
+            pluginManager.getServer().getLogger().warning("Event handler " + handler.getMethod().getDeclaringClass().getName() + "." + handler.getMethod().getName()
+                    + " of plugin " + handler.getPlugin().getPluginInfo().name() + " took "
+                    + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms to handle " + eventClass.getSimpleName());
+        }
+    }
+
+    /**
+     * Gets the timings of all handlers of the specified plugin.
+     *
+     * @param plugin the plugin
+     * @return the plugin's timings, or an empty histogram that is not updated
+     * later if nothing was sampled yet
+     */
+    public TimingHistogram getPluginTimings(Plugin plugin) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        return pluginTimings.getOrDefault(plugin, EMPTY);
+    }
+
+    /**
+     * Gets the timings of all handlers that were called for the specified
+     * event class.
+     *
+     * @param eventClass the concrete event class
+     * @return the event's timings, or an empty histogram that is not updated
+     * later if nothing was sampled yet
+     */
+    public TimingHistogram getEventTimings(Class<?> eventClass) {
+        Preconditions.checkNotNull(eventClass, "eventClass");
+        return eventTimings.getOrDefault(eventClass, EMPTY);
+    }
+
+    /**
+     * Gets the timings of a single handler.
+     *
+     * @param handler the handler
+     * @return the handler's timings
+     */
+    public TimingHistogram getHandlerTimings(RegisteredHandler handler) {
+        Preconditions.checkNotNull(handler, "handler");
+        return handler.getTimings();
+    }
+
+    /**
+     * Clears all timings: per plugin, per event class and per handler.
+     * Histograms obtained earlier are cleared as well.
+     */
+    public void reset() {
+        pluginTimings.values().forEach(TimingHistogram::reset);
+        pluginTimings.clear();
+        eventTimings.values().forEach(TimingHistogram::reset);
+        eventTimings.clear();
+        for (RegisteredHandler handler : pluginManager.getAllRegisteredHandlers()) {
+            handler.getTimings().reset();
+        }
+    }
+
+    void remove(Plugin plugin) {
+        pluginTimings.remove(plugin);
+    }
+
+    void remove(ClassLoader loader) {
+        eventTimings.keySet().removeIf(eventClass -> eventClass.getClassLoader() == loader);
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Sets how often handler invocations are timed. An interval of 1 times
+     * every invocation, and an interval of 0 disables timing entirely.
+     *
+     * @param sampleInterval the number of invocations per sample
+     */
+    public void setSampleInterval(int sampleInterval) {
+        Preconditions.checkArgument(sampleInterval >= 0, "sampleInterval must not be negative");
+        this.sampleInterval = sampleInterval;
+    }
+
+    public long getSlowHandlerThreshold(TimeUnit unit) {
+        return unit.convert(slowThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the duration above which a sampled handler invocation is logged.
+     *
+     * @param threshold the threshold
+     * @param unit the unit of the threshold
+     */
+    public void setSlowHandlerThreshold(long threshold, TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit");
+        Preconditions.checkArgument(threshold >= 0, "threshold must not be negative");
+        this.slowThresholdNanos = unit.toNanos(threshold);
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+/**
+ * Describes how a {@link RegisteredHandler} invokes its handler method.
+ */
+public enum ExecutorMode {
+
+    /**
+     * The handler is called through a class generated at registration time,
+     * which allows the JIT to inline the handler into the dispatch loop.
+     */
+    GENERATED,
+    /**
+     * The handler is called through a bound method handle. This is used when
+     * a class can not be generated for the handler, such as when the listener
+     * was loaded by a class loader the API can not see.
+     */
+    METHOD_HANDLE,
+    /**
+     * The handler is called through {@link java.lang.reflect.Method#invoke}.
+     * This is the slowest mode and only used as a last resort.
+     */
+    REFLECTION;
+}
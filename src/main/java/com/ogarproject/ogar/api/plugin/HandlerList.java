@@ -0,0 +1,165 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.collect.ImmutableMap;
+import com.ogarproject.ogar.api.event.Event;
+import com.ogarproject.ogar.api.event.KeyedEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A HandlerList holds the resolved handlers for one concrete event class. The
+ * same instance is kept up to date by the {@link PluginManager} as listeners
+ * are registered and plugins are disabled, so it can be obtained once and held
+ * onto, for example to skip constructing an event that no plugin listens for:
+ *
+ * <pre>
+ * HandlerList nameChange = pluginManager.getHandlerList(PlayerNameChangeEvent.class);
+ * ...
+ * if (nameChange.hasListeners()) {
+ *     pluginManager.callEvent(new PlayerNameChangeEvent(player, name));
+ * }
+ * </pre>
+ *
+ * For {@link KeyedEvent keyed events}, handlers that are restricted to
+ * specific keys are indexed by key, so that dispatch only needs a single
+ * lookup to find every handler interested in an event.
+ */
+public final class HandlerList {
+
+    private final Class<? extends Event> eventClass;
+    // Both handler sets are replaced together, so a dispatch that reads this once sees a consistent snapshot
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    HandlerList(Class<? extends Event> eventClass) {
+        this.eventClass = eventClass;
+    }
+
+    /**
+     * Gets the event class these handlers were resolved for.
+     *
+     * @return the event class
+     */
+    public Class<? extends Event> getEventClass() {
+        return eventClass;
+    }
+
+    /**
+     * Checks if any handler would receive an event of this class.
+     *
+     * @return true if at least one handler is registered
+     */
+    public boolean hasListeners() {
+        Snapshot current = snapshot;
+        return current.handlers.length != 0 || !current.keyedHandlers.isEmpty();
+    }
+
+    /**
+     * Checks if any handler would receive an event of this class with the
+     * specified key.
+     *
+     * @param key the event key, see {@link KeyedEvent#getEventKey()}
+     * @return true if at least one handler is registered for the key
+     */
+    public boolean hasListeners(String key) {
+        return snapshot.handlersFor(key).length != 0;
+    }
+
+    /**
+     * Gets every handler that may receive an event of this class, in the order
+     * they are called.
+     *
+     * @return an unmodifiable snapshot of the handlers
+     */
+    public List<RegisteredHandler> getHandlers() {
+        Snapshot current = snapshot;
+        if (current.keyedHandlers.isEmpty()) {
+            return Collections.unmodifiableList(Arrays.asList(current.handlers));
+        }
+
+        Set<RegisteredHandler> all = new LinkedHashSet<>(Arrays.asList(current.handlers));
+        current.keyedHandlers.values().forEach(h -> all.addAll(Arrays.asList(h)));
+        RegisteredHandler[] sorted = all.toArray(new RegisteredHandler[0]);
+        Arrays.sort(sorted, PluginManager.HANDLER_ORDER);
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    /**
+     * Gets the handlers that receive an event of this class with the
+     * specified key, in the order they are called.
+     *
+     * @param key the event key, see {@link KeyedEvent#getEventKey()}
+     * @return an unmodifiable snapshot of the handlers
+     */
+    public List<RegisteredHandler> getHandlers(String key) {
+        return Collections.unmodifiableList(Arrays.asList(snapshot.handlersFor(key)));
+    }
+
+    RegisteredHandler[] handlers(Event event) {
+        Snapshot current = snapshot;
+        if (current.keyedHandlers.isEmpty()) {
+            return current.handlers;
+        }
+
+        return current.handlersFor(((KeyedEvent) event).getEventKey());
+    }
+
+    /**
+     * Gets the handlers for a batch of events, which can only share handlers
+     * if no handler is restricted to keys.
+     *
+     * @return the handlers, or null if any handler is restricted to keys
+     */
+    RegisteredHandler[] batchHandlers() {
+        Snapshot current = snapshot;
+        return current.keyedHandlers.isEmpty() ? current.handlers : null;
+    }
+
+    /**
+     * Replaces the handlers of this list.
+     *
+     * @param handlers the handlers that receive every event
+     * @param keyedHandlers for each key, the handlers for that key merged with
+     * the handlers that receive every event
+     */
+    void update(RegisteredHandler[] handlers, Map<String, RegisteredHandler[]> keyedHandlers) {
+        this.snapshot = new Snapshot(handlers, keyedHandlers);
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new RegisteredHandler[0], ImmutableMap.of());
+
+        final RegisteredHandler[] handlers;
+        final Map<String, RegisteredHandler[]> keyedHandlers;
+
+        Snapshot(RegisteredHandler[] handlers, Map<String, RegisteredHandler[]> keyedHandlers) {
+            this.handlers = handlers;
+            this.keyedHandlers = keyedHandlers;
+        }
+
+        RegisteredHandler[] handlersFor(String key) {
+            RegisteredHandler[] result = key == null ? null : keyedHandlers.get(key);
+            return result == null ? handlers : result;
+        }
+    }
+}
@@ -32,58 +32,608 @@
 package com.ogarproject.ogar.api.plugin;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import com.ogarproject.ogar.api.Player;
+import com.ogarproject.ogar.api.event.plugin.PluginMessageEvent;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Messenger handles sending and receiving OMP messages to and from OMP-capable
- * clients.
+ * clients. Channels may be registered from any thread, since plugins can be
+ * enabled concurrently. Lookups never block, so network threads can check
+ * channels while plugins are registering them.
+ * <p>
+ * Each registered channel is assigned a compact integer ID, exposed through a
+ * {@link ChannelHandle}. IDs start at 1 and are never assigned twice. The
+ * slots of unregistered channels in the ID table are reused, but a reused
+ * slot gives its new channel an ID of a later generation, so messages sent
+ * under the old ID are dropped rather than routed to the new channel. A client
+ * that has received the {@link #CHANNEL_TABLE channel table} can keep using
+ * its copy until the {@link #getChannelTableVersion() table version} changes.
+ * At most 65535 channels can be registered at the same time.
+ * <p>
+ * Payloads can be built in pooled buffers from {@link #getBufferPool()} and
+ * sent without copying them into a new array.
+ * <p>
+ * Incoming messages are routed with {@link #dispatchIncoming(Player, String,
+ * ByteBuffer)} straight to the handlers registered for their channel. Only
+ * messages on channels without a handler are fired as a
+ * {@link PluginMessageEvent}, and only if the Messenger was created with a
+ * {@link PluginManager}.
  */
 public class Messenger {
 
-    private final Multimap<Plugin, String> channelRegistrations = ArrayListMultimap.create();
-    private final Set<String> allChannelRegistrations = new HashSet<>();
+    /**
+     * The reserved channel the server uses to send the channel ID table to
+     * OMP-capable clients. See {@link #encodeChannelTable()}.
+     */
+    public static final String CHANNEL_TABLE = "OMP|ChannelTable";
 
+    /**
+     * The largest payload a plugin message can carry, in bytes.
+     */
+    public static final int MAX_MESSAGE_SIZE = 32767;
+
+    static final IncomingHandler[] NO_HANDLERS = new IncomingHandler[0];
+
+    // The low bits of a channel ID are its slot in the table, and the bits above them count how often the slot was reused
+    private static final int SLOT_BITS = 16;
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = MAX_SLOTS - 1;
+
+    // Registrations are changed under registryLock; lookups read the concurrent map and volatile fields
+    private final Object registryLock = new Object();
+    private final Map<Plugin, Set<String>> channelRegistrations = new HashMap<>();
+    private final ConcurrentMap<String, ChannelHandle> allChannelRegistrations = new ConcurrentHashMap<>();
+    private volatile ChannelHandle[] channelSlots = new ChannelHandle[16];
+    private volatile int channelTableVersion;
+    private volatile ChannelSnapshot channelSnapshot = new ChannelSnapshot(0, Collections.emptySet());
+    private final Set<ChannelHandle> registrationOrder = new LinkedHashSet<>();
+    // For each free slot, the ID its next channel gets
+    private final Deque<Integer> freeChannelIds = new ArrayDeque<>();
+    private int nextSlot = 1;
+    private final PluginBufferPool bufferPool;
+    private final PluginManager pluginManager;
+
+    public Messenger() {
+        this(null, new PluginBufferPool(false));
+    }
+
+    public Messenger(PluginBufferPool bufferPool) {
+        this(null, bufferPool);
+    }
+
+    public Messenger(PluginManager pluginManager) {
+        this(pluginManager, new PluginBufferPool(false));
+    }
+
+    /**
+     * @param pluginManager the plugin manager to fire {@link PluginMessageEvent}s
+     * and report handler errors through, or null to only use direct handlers
+     * @param bufferPool the pool plugin message buffers are allocated from;
+     * servers that write to the network from direct memory should use a
+     * direct pool
+     */
+    public Messenger(PluginManager pluginManager, PluginBufferPool bufferPool) {
+        this.pluginManager = pluginManager;
+        this.bufferPool = Preconditions.checkNotNull(bufferPool, "bufferPool");
+    }
+
+    /**
+     * Registers an OMP channel for a plugin.
+     *
+     * @param plugin the plugin registering the channel
+     * @param channelName the channel name, which must not start with a
+     * reserved prefix
+     */
     public void registerChannel(Plugin plugin, String channelName) {
+        registerChannelHandle(plugin, channelName);
+    }
+
+    /**
+     * Registers an OMP channel for a plugin and gets its handle.
+     *
+     * @param plugin the plugin registering the channel
+     * @param channelName the channel name, which must not start with a
+     * reserved prefix
+     * @return the channel's handle, shared by every plugin registering the
+     * same channel
+     */
+    public ChannelHandle registerChannelHandle(Plugin plugin, String channelName) {
         Preconditions.checkNotNull(plugin, "plugin");
         Preconditions.checkNotNull(channelName, "channelName");
         Preconditions.checkArgument(plugin.isEnabled(), "Attempted to register an OMP channel for a disabled plugin");
-        Preconditions.checkArgument(!channelName.toUpperCase().startsWith("OMP|") && !channelName.toUpperCase().startsWith("O2|"), "Attempted to register a reserved channel name");
+        Preconditions.checkArgument(!isReserved(channelName), "Attempted to register a reserved channel name");
 
-        if (channelRegistrations.containsEntry(plugin, channelName)) {
-            return;
-        }
+        synchronized (registryLock) {
+            ChannelHandle handle = allChannelRegistrations.get(channelName);
+            if (!channelRegistrations.computeIfAbsent(plugin, p -> new HashSet<>()).add(channelName)) {
+                return handle;
+            }
 
-        channelRegistrations.put(plugin, channelName);
-        allChannelRegistrations.add(channelName);
+            if (handle == null) {
+                handle = new ChannelHandle(channelName, nextChannelId());
+                int slot = handle.getId() & SLOT_MASK;
+                ChannelHandle[] table = channelSlots;
+                if (slot >= table.length) {
+                    table = Arrays.copyOf(table, table.length * 2);
+                }
+                table[slot] = handle;
+                allChannelRegistrations.put(channelName, handle);
+                // Written after the slot, so readers that see the new table also see the handle
+                channelSlots = table;
+                registrationOrder.add(handle);
+                channelTableVersion++;
+            }
+            handle.references++;
+            return handle;
+        }
     }
 
     public void unregisterChannel(Plugin plugin, String channelName) {
         Preconditions.checkNotNull(plugin, "plugin");
         Preconditions.checkNotNull(channelName, "channelName");
-        Preconditions.checkArgument(!channelName.toUpperCase().startsWith("OMP|") && !channelName.toUpperCase().startsWith("O2|"),
-                "Attempted to unregister a reserved channel name");
+        Preconditions.checkArgument(!isReserved(channelName), "Attempted to unregister a reserved channel name");
 
-        channelRegistrations.remove(plugin, channelName);
-        if (!channelRegistrations.containsValue(channelName)) {
-            allChannelRegistrations.remove(channelName);
+        synchronized (registryLock) {
+            Set<String> channels = channelRegistrations.get(plugin);
+            if (channels == null || !channels.remove(channelName)) {
+                return;
+            }
+            if (channels.isEmpty()) {
+                channelRegistrations.remove(plugin);
+            }
+
+            ChannelHandle handle = allChannelRegistrations.get(channelName);
+            removeIncomingHandler(plugin, handle);
+            if (--handle.references == 0) {
+                allChannelRegistrations.remove(channelName);
+                ChannelHandle[] table = channelSlots;
+                table[handle.getId() & SLOT_MASK] = null;
+                channelSlots = table;
+                registrationOrder.remove(handle);
+                handle.invalidate();
+                // A slot whose generations have run out is retired, so no ID is ever assigned twice
+                if (handle.getId() <= Integer.MAX_VALUE - MAX_SLOTS) {
+                    freeChannelIds.push(handle.getId() + MAX_SLOTS);
+                }
+                channelTableVersion++;
+            }
         }
     }
 
+    private int nextChannelId() {
+        Integer freeId = freeChannelIds.poll();
+        if (freeId != null) {
+            return freeId;
+        }
+
+        Preconditions.checkState(nextSlot < MAX_SLOTS, "Too many OMP channels are registered");
+        return nextSlot++;
+    }
+
     public void unregisterAll(Plugin plugin) {
         Preconditions.checkNotNull(plugin, "plugin");
-        for (String channelName : channelRegistrations.get(plugin)) {
-            unregisterChannel(plugin, channelName);
+        synchronized (registryLock) {
+            Set<String> channels = channelRegistrations.get(plugin);
+            if (channels != null) {
+                for (String channelName : new ArrayList<>(channels)) {
+                    unregisterChannel(plugin, channelName);
+                }
+            }
         }
     }
 
     public boolean isChannelRegistered(String channel) {
-        return allChannelRegistrations.contains(channel);
+        return allChannelRegistrations.containsKey(channel);
     }
 
+    /**
+     * Gets the names of all registered channels, in the order they were
+     * registered.
+     *
+     * @return a new array of the registered channel names
+     */
     public String[] getAllChannelRegistrations() {
-        return allChannelRegistrations.toArray(new String[0]);
+        return snapshot().names.clone();
+    }
+
+    /**
+     * Gets the registered channels as of the current table version. The
+     * snapshot is only rebuilt after the registered channels change.
+     */
+    private ChannelSnapshot snapshot() {
+        ChannelSnapshot snapshot = channelSnapshot;
+        if (snapshot.version == channelTableVersion) {
+            return snapshot;
+        }
+
+        synchronized (registryLock) {
+            snapshot = channelSnapshot;
+            if (snapshot.version != channelTableVersion) {
+                snapshot = new ChannelSnapshot(channelTableVersion, registrationOrder);
+                channelSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Registers a handler for messages that players send on a channel. The
+     * channel is registered for the plugin if it is not already. Each plugin
+     * can have one handler per channel. The handler is removed when the plugin
+     * unregisters the channel, and the plugin's channels are all unregistered
+     * when it is disabled, so it registers its handlers again when enabled.
+     *
+     * @param plugin the plugin registering the handler
+     * @param channelName the channel name, which must not start with a
+     * reserved prefix
+     * @param handler the handler
+     * @return the channel's handle
+     */
+    public ChannelHandle registerIncomingHandler(Plugin plugin, String channelName, PluginMessageHandler handler) {
+        Preconditions.checkNotNull(handler, "handler");
+        synchronized (registryLock) {
+            ChannelHandle channel = registerChannelHandle(plugin, channelName);
+            IncomingHandler[] handlers = channel.incomingHandlers;
+            for (IncomingHandler registered : handlers) {
+                Preconditions.checkArgument(registered.plugin != plugin, "Plugin %s already has a handler for channel %s", plugin.getPluginInfo().name(), channelName);
+            }
+
+            IncomingHandler[] updated = Arrays.copyOf(handlers, handlers.length + 1);
+            updated[handlers.length] = new IncomingHandler(plugin, handler);
+            channel.incomingHandlers = updated;
+            return channel;
+        }
+    }
+
+    /**
+     * Removes a plugin's handler for a channel. The channel stays registered.
+     *
+     * @param plugin the plugin that registered the handler
+     * @param channelName the channel name
+     */
+    public void unregisterIncomingHandler(Plugin plugin, String channelName) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkNotNull(channelName, "channelName");
+        synchronized (registryLock) {
+            ChannelHandle channel = allChannelRegistrations.get(channelName);
+            if (channel != null) {
+                removeIncomingHandler(plugin, channel);
+            }
+        }
+    }
+
+    private void removeIncomingHandler(Plugin plugin, ChannelHandle channel) {
+        IncomingHandler[] handlers = channel.incomingHandlers;
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i].plugin == plugin) {
+                IncomingHandler[] updated = new IncomingHandler[handlers.length - 1];
+                System.arraycopy(handlers, 0, updated, 0, i);
+                System.arraycopy(handlers, i + 1, updated, i, updated.length - i);
+                channel.incomingHandlers = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Routes a message received from a player to the handlers registered for
+     * its channel. If the channel has no handlers, a {@link PluginMessageEvent}
+     * is fired instead.
+     *
+     * @param player the player that sent the message
+     * @param channelName the channel the message was received on
+     * @param data the payload; it is not copied, and its position is not
+     * changed
+     * @return true if a handler received the message
+     */
+    public boolean dispatchIncoming(Player player, String channelName, ByteBuffer data) {
+        Preconditions.checkNotNull(channelName, "channelName");
+        Preconditions.checkNotNull(data, "data");
+
+        ChannelHandle channel = getChannel(channelName);
+        if (channel != null && dispatch(player, channel, data)) {
+            return true;
+        }
+
+        if (pluginManager != null) {
+            pluginManager.callEvent(new PluginMessageEvent(player, channelName, data));
+        }
+        return false;
+    }
+
+    /**
+     * Routes a message received from a player that addressed the channel by
+     * its ID. Messages for unknown IDs are dropped.
+     *
+     * @param player the player that sent the message
+     * @param channelId the ID of the channel the message was received on
+     * @param data the payload; it is not copied, and its position is not
+     * changed
+     * @return true if a handler received the message
+     * @see #dispatchIncoming(Player, String, ByteBuffer)
+     */
+    public boolean dispatchIncoming(Player player, int channelId, ByteBuffer data) {
+        Preconditions.checkNotNull(data, "data");
+
+        ChannelHandle channel = getChannel(channelId);
+        if (channel == null) {
+            return false;
+        }
+        if (dispatch(player, channel, data)) {
+            return true;
+        }
+
+        if (pluginManager != null) {
+            pluginManager.callEvent(new PluginMessageEvent(player, channel.getName(), data));
+        }
+        return false;
+    }
+
+    private boolean dispatch(Player player, ChannelHandle channel, ByteBuffer data) {
+        IncomingHandler[] handlers = channel.incomingHandlers;
+        if (handlers.length == 0) {
+            return false;
+        }
+
+        TickProfiler profiler = pluginManager != null ? pluginManager.trackingProfiler() : null;
+        ByteBuffer payload = data.asReadOnlyBuffer();
+        boolean handled = false;
+        for (IncomingHandler registered : handlers) {
+            if (!registered.plugin.isEnabled()) {
+                continue;
+            }
+
+            long start = profiler != null ? System.nanoTime() : 0;
+            try {
+                registered.handler.onPluginMessage(player, channel, handlers.length == 1 ? payload : payload.duplicate());
+                handled = true;
+            } catch (Throwable t) {
+                getLogger().log(Level.SEVERE, "Error while handling plugin message on channel " + channel.getName() + " in plugin "
+                        + registered.plugin.getPluginInfo().name(), t);
+            } finally {
+                if (profiler != null) {
+                    profiler.recordPlugin(registered.plugin, System.nanoTime() - start);
+                }
+            }
+        }
+        return handled;
+    }
+
+    private Logger getLogger() {
+        return pluginManager != null ? pluginManager.getServer().getLogger() : Logger.getLogger(Messenger.class.getName());
+    }
+
+    /**
+     * Gets the handle of a registered channel.
+     *
+     * @param channel the channel name
+     * @return the channel's handle, or null if it is not registered
+     */
+    public ChannelHandle getChannel(String channel) {
+        return allChannelRegistrations.get(channel);
+    }
+
+    /**
+     * Gets the handle of a registered channel by its ID, as sent by clients
+     * that use the channel table.
+     *
+     * @param id the channel ID
+     * @return the channel's handle, or null if no channel with that ID is
+     * registered, which includes the IDs of unregistered channels whose slot
+     * has been reused
+     */
+    public ChannelHandle getChannel(int id) {
+        if (id <= 0) {
+            return null;
+        }
+
+        ChannelHandle[] table = channelSlots;
+        int slot = id & SLOT_MASK;
+        ChannelHandle handle = slot < table.length ? table[slot] : null;
+        return handle != null && handle.getId() == id ? handle : null;
+    }
+
+    /**
+     * Gets the version of the channel table, which changes whenever a channel
+     * is added to or removed from it. Connections can compare this against the
+     * version they last sent to decide whether to resend the table.
+     *
+     * @return the current table version
+     */
+    public int getChannelTableVersion() {
+        return channelTableVersion;
+    }
+
+    /**
+     * Encodes the current channel table as the payload of a
+     * {@link #CHANNEL_TABLE} message. The payload is a varint channel count,
+     * followed by each channel's varint ID, varint name length and UTF-8 name.
+     *
+     * @return a new array of the encoded table
+     */
+    public byte[] encodeChannelTable() {
+        return snapshot().table.clone();
+    }
+
+    public PluginBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Allocates a pooled buffer for a plugin message payload. See
+     * {@link PluginBufferPool#allocate(int)}.
+     *
+     * @param capacity the payload size, up to {@link #MAX_MESSAGE_SIZE}
+     * @return a buffer with a reference count of one
+     */
+    public PluginMessageBuffer allocateBuffer(int capacity) {
+        return bufferPool.allocate(capacity);
+    }
+
+    /**
+     * Creates a frame that can be sent to many players, copying the payload
+     * once.
+     *
+     * @param channel the channel handle; must still be registered
+     * @param data the payload, up to {@link #MAX_MESSAGE_SIZE} bytes
+     * @return the frame
+     */
+    public PluginMessageFrame createFrame(ChannelHandle channel, byte[] data) {
+        Preconditions.checkNotNull(data, "data");
+        return createFrame(channel, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a frame from the bytes between the buffer's position and limit.
+     * The buffer's position is not changed.
+     *
+     * @see #createFrame(ChannelHandle, byte[])
+     */
+    public PluginMessageFrame createFrame(ChannelHandle channel, ByteBuffer data) {
+        Preconditions.checkNotNull(channel, "channel");
+        Preconditions.checkNotNull(data, "data");
+        Preconditions.checkArgument(channel.isRegistered(), "Attempted to send a plugin message through an unregistered channel");
+        Preconditions.checkArgument(data.remaining() <= MAX_MESSAGE_SIZE, "Plugin messages can be at most %s bytes", MAX_MESSAGE_SIZE);
+
+        ByteBuffer payload = ByteBuffer.allocate(data.remaining());
+        payload.put(data.duplicate()).flip();
+        return new PluginMessageFrame(channel, payload);
+    }
+
+    /**
+     * Sends a plugin message to every OMP-capable player in a collection. The
+     * message is framed once and shared between all recipients.
+     *
+     * @param channel the channel name; must be registered
+     * @param data the payload, up to {@link #MAX_MESSAGE_SIZE} bytes
+     * @param recipients the players to send the message to
+     * @return the number of players the message was sent to
+     */
+    public int broadcast(String channel, byte[] data, Collection<? extends Player> recipients) {
+        return broadcast(registeredChannel(channel), data, recipients);
+    }
+
+    /**
+     * @see #broadcast(String, byte[], Collection)
+     */
+    public int broadcast(ChannelHandle channel, byte[] data, Collection<? extends Player> recipients) {
+        return broadcast(createFrame(channel, data), recipients, null);
+    }
+
+    /**
+     * Sends a plugin message to every OMP-capable player that matches a
+     * filter. The filter is only tested against OMP-capable players.
+     *
+     * @param channel the channel name; must be registered
+     * @param data the payload, up to {@link #MAX_MESSAGE_SIZE} bytes
+     * @param players the players to consider
+     * @param filter the filter recipients must match
+     * @return the number of players the message was sent to
+     */
+    public int broadcast(String channel, byte[] data, Iterable<? extends Player> players, Predicate<? super Player> filter) {
+        return broadcast(registeredChannel(channel), data, players, filter);
+    }
+
+    /**
+     * @see #broadcast(String, byte[], Iterable, Predicate)
+     */
+    public int broadcast(ChannelHandle channel, byte[] data, Iterable<? extends Player> players, Predicate<? super Player> filter) {
+        Preconditions.checkNotNull(filter, "filter");
+        return broadcast(createFrame(channel, data), players, filter);
+    }
+
+    /**
+     * Sends a frame to every OMP-capable player that matches a filter.
+     *
+     * @param frame the frame to send
+     * @param players the players to consider
+     * @param filter the filter recipients must match, or null to send to
+     * every OMP-capable player
+     * @return the number of players the frame was sent to
+     */
+    public int broadcast(PluginMessageFrame frame, Iterable<? extends Player> players, Predicate<? super Player> filter) {
+        Preconditions.checkNotNull(frame, "frame");
+        Preconditions.checkNotNull(players, "players");
+
+        int sent = 0;
+        for (Player player : players) {
+            if (player.isPluginMessageCapable() && (filter == null || filter.test(player)) && player.sendPluginMessageFrame(frame)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private ChannelHandle registeredChannel(String channel) {
+        Preconditions.checkNotNull(channel, "channel");
+        ChannelHandle handle = getChannel(channel);
+        Preconditions.checkArgument(handle != null, "Attempted to send a plugin message through an unregistered channel");
+        return handle;
+    }
+
+    private static boolean isReserved(String channelName) {
+        return channelName.regionMatches(true, 0, "OMP|", 0, 4) || channelName.regionMatches(true, 0, "O2|", 0, 3);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static final class IncomingHandler {
+
+        final Plugin plugin;
+        final PluginMessageHandler handler;
+
+        IncomingHandler(Plugin plugin, PluginMessageHandler handler) {
+            this.plugin = plugin;
+            this.handler = handler;
+        }
+    }
+
+    private static final class ChannelSnapshot {
+
+        final int version;
+        final String[] names;
+        final byte[] table;
+
+        ChannelSnapshot(int version, Collection<ChannelHandle> handles) {
+            this.version = version;
+            this.names = new String[handles.size()];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarInt(out, handles.size());
+            int i = 0;
+            for (ChannelHandle handle : handles) {
+                names[i++] = handle.getName();
+                byte[] name = handle.getName().getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, handle.getId());
+                writeVarInt(out, name.length);
+                out.write(name, 0, name.length);
+            }
+            this.table = out.toByteArray();
+        }
     }
 }
@@ -23,7 +23,7 @@ public abstract class Plugin {
 
     private Server server;
     private PluginManager pluginManager;
-    private boolean enabled = false;
+    private volatile boolean enabled = false;
 
     public void onEnable() {
         // To be overridden by implementations
@@ -0,0 +1,171 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of plugin message buffers, in power-of-two size classes up to
+ * {@link Messenger#MAX_MESSAGE_SIZE}. Buffers are handed out as
+ * {@link PluginMessageBuffer}s and come back to the pool when their last
+ * reference is released. The pool is safe to use from any thread.
+ * <p>
+ * Direct buffers let the server write payloads to the network without an
+ * extra copy, but are more expensive to allocate; a direct pool should keep
+ * enough buffers to make allocation rare.
+ */
+public class PluginBufferPool {
+
+    private static final int MIN_SHIFT = 6;
+    private static final int MAX_SHIFT = 32 - Integer.numberOfLeadingZeros(Messenger.MAX_MESSAGE_SIZE - 1);
+
+    private final boolean direct;
+    private final int maxPooledPerSize;
+    private final Queue<ByteBuffer>[] pooled;
+    private final AtomicInteger[] pooledCounts;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    public PluginBufferPool(boolean direct) {
+        this(direct, 256);
+    }
+
+    /**
+     * @param direct true to allocate direct buffers
+     * @param maxPooledPerSize how many free buffers of each size class to keep
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PluginBufferPool(boolean direct, int maxPooledPerSize) {
+        Preconditions.checkArgument(maxPooledPerSize >= 0, "maxPooledPerSize must not be negative");
+        this.direct = direct;
+        this.maxPooledPerSize = maxPooledPerSize;
+        this.pooled = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        this.pooledCounts = new AtomicInteger[pooled.length];
+        for (int i = 0; i < pooled.length; i++) {
+            pooled[i] = new ConcurrentLinkedQueue<>();
+            pooledCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Allocates a buffer with room for a payload of the given size. The
+     * buffer's position is zero and its limit is the requested capacity.
+     *
+     * @param capacity the payload size, up to
+     * {@link Messenger#MAX_MESSAGE_SIZE}
+     * @return a buffer with a reference count of one
+     */
+    public PluginMessageBuffer allocate(int capacity) {
+        Preconditions.checkArgument(capacity >= 0 && capacity <= Messenger.MAX_MESSAGE_SIZE,
+                "Plugin messages can be at most %s bytes", Messenger.MAX_MESSAGE_SIZE);
+
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = pooled[sizeClass].poll();
+        if (buffer != null) {
+            pooledCounts[sizeClass].decrementAndGet();
+            buffer.clear();
+        } else {
+            int size = 1 << (sizeClass + MIN_SHIFT);
+            buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            created.incrementAndGet();
+        }
+        buffer.limit(capacity);
+        allocations.incrementAndGet();
+        outstanding.incrementAndGet();
+        return new PluginMessageBuffer(this, buffer);
+    }
+
+    /**
+     * Allocates a buffer holding a copy of the given payload, ready to be
+     * sent.
+     *
+     * @param data the payload
+     * @return a buffer with a reference count of one
+     */
+    public PluginMessageBuffer copyOf(byte[] data) {
+        Preconditions.checkNotNull(data, "data");
+        PluginMessageBuffer buffer = allocate(data.length);
+        buffer.getBuffer().put(data).flip();
+        return buffer;
+    }
+
+    void recycle(ByteBuffer buffer) {
+        outstanding.decrementAndGet();
+        int sizeClass = Integer.numberOfTrailingZeros(buffer.capacity()) - MIN_SHIFT;
+        if (pooledCounts[sizeClass].incrementAndGet() <= maxPooledPerSize) {
+            pooled[sizeClass].offer(buffer);
+        } else {
+            pooledCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        return capacity <= 1 << MIN_SHIFT ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Gets the number of buffers handed out by this pool.
+     *
+     * @return the total number of allocations
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * Gets the number of buffers this pool had to create because none of the
+     * right size were free.
+     *
+     * @return the number of buffers created
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * Gets the number of buffers that have been allocated but not yet
+     * released. A number that keeps growing means buffers are being leaked.
+     *
+     * @return the number of outstanding buffers
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Gets the number of free buffers held by this pool.
+     *
+     * @return the number of pooled buffers
+     */
+    public int getPooled() {
+        int count = 0;
+        for (AtomicInteger pooledCount : pooledCounts) {
+            count += pooledCount.get();
+        }
+        return count;
+    }
+}
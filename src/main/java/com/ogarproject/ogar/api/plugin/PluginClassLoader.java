@@ -0,0 +1,106 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * A PluginClassLoader loads the classes of a single plugin jar. Classes that
+ * can't be found in the server or in the jar itself are looked up in the jars
+ * of the other loaded plugins, so plugins can still use each other's classes.
+ * Since each jar has its own loader, its classes can be garbage collected once
+ * its plugins have been unloaded and the loader is closed.
+ */
+final class PluginClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final PluginManager pluginManager;
+    private final File file;
+    private MethodHandles.Lookup lookup;
+    private boolean lookupDefined;
+
+    PluginClassLoader(PluginManager pluginManager, File file, ClassLoader parent) throws MalformedURLException {
+        super(new URL[]{file.toURI().toURL()}, parent);
+        this.pluginManager = pluginManager;
+        this.file = file;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        try {
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException ex) {
+            Class<?> clazz = pluginManager.findPluginClass(name, this);
+            if (clazz == null) {
+                throw ex;
+            }
+            return clazz;
+        }
+    }
+
+    /**
+     * Loads a class from the server or this loader's jar, without searching
+     * the jars of other plugins.
+     *
+     * @param name the binary name of the class
+     * @return the class
+     * @throws ClassNotFoundException if the class could not be found
+     */
+    Class<?> loadLocalClass(String name) throws ClassNotFoundException {
+        return super.loadClass(name, false);
+    }
+
+    /**
+     * Gets a full-privilege lookup for classes defined by this loader. Lookups
+     * from the API's own loader lose that privilege for plugin classes, which
+     * keeps {@link java.lang.invoke.LambdaMetafactory} from generating
+     * invokers for them, so a copy of {@link PluginLookup} is defined in this
+     * loader instead.
+     *
+     * @return the lookup, or null if it could not be created
+     */
+    synchronized MethodHandles.Lookup getLookup() {
+        if (!lookupDefined) {
+            lookupDefined = true;
+            try (InputStream in = PluginLookup.class.getResourceAsStream(PluginLookup.class.getSimpleName() + ".class")) {
+                byte[] bytes = ByteStreams.toByteArray(in);
+                Class<?> provider = defineClass(PluginLookup.class.getName(), bytes, 0, bytes.length);
+                Method method = provider.getDeclaredMethod("lookup");
+                method.setAccessible(true);
+                lookup = (MethodHandles.Lookup) method.invoke(null);
+            } catch (IOException | ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                lookup = null;
+            }
+        }
+        return lookup;
+    }
+
+    File getFile() {
+        return file;
+    }
+}
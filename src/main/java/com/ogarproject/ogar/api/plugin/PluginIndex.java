@@ -0,0 +1,123 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A PluginIndex describes the plugin main classes and event handlers in one
+ * plugin jar. Jars built with {@link PluginIndexProcessor} contain a
+ * pre-built index at {@link #RESOURCE}; for other jars an index is built by
+ * {@link PluginScanner}, which only contains the plugin main classes.
+ */
+final class PluginIndex {
+
+    static final String RESOURCE = "META-INF/ogar/plugin-index.json";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    List<PluginEntry> plugins = new ArrayList<>();
+    /**
+     * Event handlers by the binary name of their listener class, or null if
+     * this index was built by scanning the jar.
+     */
+    Map<String, List<HandlerEntry>> listeners;
+
+    /**
+     * Reads the pre-built index of a jar file.
+     *
+     * @param zip the jar file
+     * @return the index, or null if the jar doesn't contain one
+     * @throws IOException if the index could not be read
+     */
+    static PluginIndex read(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(RESOURCE);
+        if (entry == null) {
+            return null;
+        }
+
+        try (Reader reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+            return read(reader, zip.getName());
+        }
+    }
+
+    /**
+     * Reads an index.
+     *
+     * @param reader the reader to read the index from
+     * @param source a description of where the index is read from, for
+     * errors
+     * @return the index
+     * @throws IOException if the index could not be read
+     */
+    static PluginIndex read(Reader reader, String source) throws IOException {
+        PluginIndex index;
+        try {
+            index = GSON.fromJson(reader, PluginIndex.class);
+        } catch (JsonParseException ex) {
+            throw new IOException("Malformed plugin index in " + source, ex);
+        }
+        if (index == null || index.plugins == null) {
+            throw new IOException("Malformed plugin index in " + source);
+        }
+        return index;
+    }
+
+    String toJson() {
+        return GSON.toJson(this);
+    }
+
+    static final class PluginEntry {
+
+        String mainClass;
+        String name;
+        String version;
+        String author;
+        String description;
+        String website;
+        List<String> depends = new ArrayList<>();
+        List<String> softDepends = new ArrayList<>();
+    }
+
+    static final class HandlerEntry {
+
+        String method;
+        /**
+         * The binary name of the method's parameter type.
+         */
+        String parameter;
+        /**
+         * The binary name of the handled event type, which differs from the
+         * parameter type for batch handlers.
+         */
+        String event;
+        String priority;
+        boolean ignoreCancelled;
+        boolean batch;
+        List<String> keys = new ArrayList<>();
+    }
+}
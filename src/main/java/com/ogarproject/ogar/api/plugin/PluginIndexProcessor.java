@@ -0,0 +1,226 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.ogarproject.ogar.api.event.EventHandler;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor that writes a {@link PluginIndex} into plugin jars
+ * at build time. The index lists every {@link PluginInfo} class and every
+ * {@link EventHandler} method, which lets the {@link PluginManager} load the
+ * plugin and wire its listeners without scanning the jar or reflecting over
+ * listener classes.
+ * <p>
+ * The processor is registered as a service in the API jar, so it runs
+ * automatically for any plugin compiled against the API. Handlers in local
+ * and anonymous classes are not visible to annotation processors; those are
+ * still discovered through reflection. Incremental builds only compile some
+ * of a plugin's sources, so entries from an existing index are kept for
+ * classes that were not compiled again and still exist.
+ */
+@SupportedAnnotationTypes({"com.ogarproject.ogar.api.plugin.PluginInfo", "com.ogarproject.ogar.api.event.EventHandler"})
+public class PluginIndexProcessor extends AbstractProcessor {
+
+    private final PluginIndex index = new PluginIndex();
+    private final Set<String> compiledTypes = new HashSet<>();
+
+    public PluginIndexProcessor() {
+        index.listeners = new LinkedHashMap<>();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!index.plugins.isEmpty() || !index.listeners.isEmpty()) {
+                write();
+            }
+            return false;
+        }
+
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                addCompiledType((TypeElement) element);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(PluginInfo.class)) {
+            if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                addPlugin((TypeElement) element);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(EventHandler.class)) {
+            if (element.getKind() == ElementKind.METHOD) {
+                addHandler((ExecutableElement) element);
+            }
+        }
+        return false;
+    }
+
+    private void addCompiledType(TypeElement type) {
+        compiledTypes.add(binaryName(type));
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                addCompiledType((TypeElement) enclosed);
+            }
+        }
+    }
+
+    private void addPlugin(TypeElement type) {
+        PluginInfo info = type.getAnnotation(PluginInfo.class);
+        PluginIndex.PluginEntry entry = new PluginIndex.PluginEntry();
+        entry.mainClass = binaryName(type);
+        entry.name = info.name();
+        entry.version = info.version();
+        entry.author = info.author();
+        entry.description = info.description();
+        entry.website = info.website();
+        entry.depends.addAll(Arrays.asList(info.depends()));
+        entry.softDepends.addAll(Arrays.asList(info.softDepends()));
+        index.plugins.add(entry);
+    }
+
+    private void addHandler(ExecutableElement method) {
+        if (method.getParameters().size() != 1) {
+            // Reported by the PluginManager when the listener is registered
+            return;
+        }
+
+        EventHandler annotation = method.getAnnotation(EventHandler.class);
+        TypeMirror parameter = method.getParameters().get(0).asType();
+        TypeMirror event = parameter;
+        if (annotation.batch()) {
+            List<? extends TypeMirror> arguments = parameter.getKind() == TypeKind.DECLARED
+                    ? ((DeclaredType) parameter).getTypeArguments() : new ArrayList<>();
+            if (arguments.size() != 1) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Batch event handlers must take a List of events", method);
+                return;
+            }
+
+            event = arguments.get(0);
+            if (event.getKind() == TypeKind.WILDCARD && ((WildcardType) event).getExtendsBound() != null) {
+                event = ((WildcardType) event).getExtendsBound();
+            }
+        }
+
+        String parameterName = binaryName(parameter);
+        String eventName = binaryName(event);
+        if (parameterName == null || eventName == null) {
+            return;
+        }
+
+        PluginIndex.HandlerEntry entry = new PluginIndex.HandlerEntry();
+        entry.method = method.getSimpleName().toString();
+        entry.parameter = parameterName;
+        entry.event = eventName;
+        entry.priority = annotation.priority().name();
+        entry.ignoreCancelled = annotation.ignoreCancelled();
+        entry.batch = annotation.batch();
+        entry.keys.addAll(Arrays.asList(annotation.keys()));
+
+        String listener = binaryName((TypeElement) method.getEnclosingElement());
+        index.listeners.computeIfAbsent(listener, l -> new ArrayList<>()).add(entry);
+    }
+
+    private String binaryName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return binaryName((TypeElement) ((DeclaredType) erased).asElement());
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Keeps the entries of the existing index for classes that were not
+     * compiled in this build, if those classes still exist.
+     */
+    private void mergeExisting() {
+        PluginIndex existing;
+        try {
+            FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", PluginIndex.RESOURCE);
+            try (Reader reader = resource.openReader(true)) {
+                existing = PluginIndex.read(reader, PluginIndex.RESOURCE);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // No previous index, or one that can't be read and will be replaced
+            return;
+        }
+
+        for (PluginIndex.PluginEntry entry : existing.plugins) {
+            if (isUnchanged(entry.mainClass) && index.plugins.stream().noneMatch(e -> e.mainClass.equals(entry.mainClass))) {
+                index.plugins.add(entry);
+            }
+        }
+        if (existing.listeners != null) {
+            for (Map.Entry<String, List<PluginIndex.HandlerEntry>> entry : existing.listeners.entrySet()) {
+                if (isUnchanged(entry.getKey())) {
+                    index.listeners.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private boolean isUnchanged(String binaryName) {
+        return binaryName != null && !compiledTypes.contains(binaryName)
+                && processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.')) != null;
+    }
+
+    private void write() {
+        mergeExisting();
+        try (Writer writer = new OutputStreamWriter(processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", PluginIndex.RESOURCE).openOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(index.toJson());
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + PluginIndex.RESOURCE + ": " + ex);
+        }
+    }
+}
@@ -31,4 +31,20 @@ public @interface PluginInfo {
     public String description() default "";
 
     public String website() default "";
+
+    /**
+     * Gets the names of the plugins this plugin requires. The plugin is only
+     * enabled after all of them have been enabled successfully.
+     *
+     * @return the names of the required plugins
+     */
+    public String[] depends() default {};
+
+    /**
+     * Gets the names of the plugins this plugin should be enabled after, if
+     * they are installed.
+     *
+     * @return the names of the optional plugins
+     */
+    public String[] softDepends() default {};
 }
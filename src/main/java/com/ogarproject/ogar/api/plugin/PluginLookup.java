@@ -0,0 +1,37 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Provides a full-privilege lookup in the class loader this class is defined
+ * in. {@link PluginClassLoader} defines its own copy of this class, so that
+ * {@link EventExecutors} can generate invokers for handlers in plugin jars.
+ */
+final class PluginLookup {
+
+    /**
+     * Static-use class.
+     */
+    private PluginLookup() {
+    }
+
+    static MethodHandles.Lookup lookup() {
+        return MethodHandles.lookup();
+    }
+}
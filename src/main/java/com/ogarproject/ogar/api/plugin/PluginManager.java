@@ -18,96 +18,589 @@ package com.ogarproject.ogar.api.plugin;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ogarproject.ogar.api.Server;
+import com.ogarproject.ogar.api.event.AsyncEvent;
 import com.ogarproject.ogar.api.event.Cancellable;
 import com.ogarproject.ogar.api.event.Event;
 import com.ogarproject.ogar.api.event.EventHandler;
 import com.ogarproject.ogar.api.event.EventPriority;
+import com.ogarproject.ogar.api.event.KeyedEvent;
 import com.ogarproject.ogar.api.event.Listener;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 public class PluginManager {
 
+    static final Comparator<RegisteredHandler> HANDLER_ORDER = Comparator.comparing(RegisteredHandler::getPriority)
+            .thenComparingLong(RegisteredHandler::getSequence);
+
     private final Server server;
-    private final Map<String, Plugin> plugins = new HashMap<>();
-    private final Multimap<Plugin, Listener> listeners = ArrayListMultimap.create();
-    private URLClassLoader classLoader;
-    private boolean loadedPlugins = false;
+    private final Map<String, Plugin> plugins = new LinkedHashMap<>();
+    private final Object registryLock = new Object();
+    private volatile Registry registry = Registry.EMPTY;
+    private final Map<Class<? extends Event>, HandlerList> handlerLists = new ConcurrentHashMap<>();
+    private final Map<Plugin, PluginIndex> pluginIndexes = new ConcurrentHashMap<>();
+    private final EventTimings eventTimings;
+    private long handlerSequence = 0;
+    private Executor asyncEventExecutor;
+    private final List<PluginClassLoader> classLoaders = new CopyOnWriteArrayList<>();
+    private final ClassLoaderLeakDetector leakDetector;
+    private final Map<Plugin, Long> startupTimes = new ConcurrentHashMap<>();
+    // Startup work is often I/O bound, so use a few threads even on small machines
+    private volatile int enableParallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
 
     public PluginManager(Server server) {
         Preconditions.checkNotNull(server, "server");
         this.server = server;
+        this.eventTimings = new EventTimings(this);
+        this.leakDetector = new ClassLoaderLeakDetector(server.getLogger());
     }
 
+    /**
+     * Loads all plugin jars in a directory. Jars that have already been loaded
+     * are skipped, so this can be called again to load newly added plugins.
+     *
+     * @param directory the directory containing the plugin jars
+     * @throws Throwable if a plugin could not be loaded
+     */
     public void loadPlugins(File directory) throws Throwable {
-        Preconditions.checkState(!loadedPlugins, "Plugins can not currently be reloaded");
         Preconditions.checkArgument(directory.isDirectory(), "Directory is not a directory");
-        File[] jarFiles = directory.listFiles((dir, name) -> name.endsWith(".jar"));
-        URL[] urls = new URL[jarFiles.length];
+        File[] jarFiles = Arrays.stream(directory.listFiles((dir, name) -> name.endsWith(".jar")))
+                .map(File::getAbsoluteFile)
+                .filter(file -> getClassLoader(file) == null)
+                .toArray(File[]::new);
+        load(jarFiles, PluginScanner.index(jarFiles));
+    }
 
-        for (int i = 0; i < urls.length; i++) {
-            urls[i] = jarFiles[i].toURI().toURL();
+    /**
+     * Loads the plugins in a single jar. The plugins are not enabled.
+     *
+     * @param jarFile the plugin jar
+     * @return the loaded plugins
+     * @throws Throwable if a plugin could not be loaded
+     */
+    public List<Plugin> loadPlugin(File jarFile) throws Throwable {
+        Preconditions.checkNotNull(jarFile, "jarFile");
+        Preconditions.checkArgument(jarFile.isFile(), "Jar file does not exist");
+        File file = jarFile.getAbsoluteFile();
+        Preconditions.checkState(getClassLoader(file) == null, "Jar file is already loaded");
+        return load(new File[]{file}, Collections.singletonList(PluginScanner.index(file)));
+    }
+
+    private List<Plugin> load(File[] jarFiles, List<PluginIndex> indexes) throws Throwable {
+        // Every loader is added before any plugin is created, so plugins can use each other's classes right away
+        List<PluginClassLoader> loaders = new ArrayList<>();
+        for (File jarFile : jarFiles) {
+            PluginClassLoader loader = new PluginClassLoader(this, jarFile, this.getClass().getClassLoader());
+            loaders.add(loader);
+            classLoaders.add(loader);
         }
 
-        loadedPlugins = true;
-        classLoader = new URLClassLoader(urls, this.getClass().getClassLoader());
+        try {
+            return load(loaders, indexes);
+        } finally {
+            // Don't keep the loaders of jars that ended up without plugins, such as skipped duplicates,
+            // or findPluginClass would keep serving their classes
+            for (PluginClassLoader loader : loaders) {
+                if (plugins.values().stream().noneMatch(p -> p.getClass().getClassLoader() == loader)) {
+                    closeClassLoader(loader);
+                }
+            }
+        }
+    }
 
-        // Scan through the classes to find Plugin extensions with @PluginInfo
-        List<Class<? extends Plugin>> pluginClasses = new ArrayList<>();
-        for (File jarFile : jarFiles) {
-            try (ZipInputStream zip = new ZipInputStream(new FileInputStream(jarFile))) {
-                ZipEntry entry;
+    private List<Plugin> load(List<PluginClassLoader> loaders, List<PluginIndex> indexes) throws Throwable {
+        // Find the classes annotated with @PluginInfo from each jar's index, or by reading
+        // their class files, so that only the plugin main classes are ever loaded
+        Map<Class<? extends Plugin>, PluginIndex> pluginClasses = new LinkedHashMap<>();
+        for (int i = 0; i < loaders.size(); i++) {
+            PluginIndex index = indexes.get(i);
+            for (PluginIndex.PluginEntry entry : index.plugins) {
+                Class<?> clazz = Class.forName(entry.mainClass, false, loaders.get(i));
+                if (!Plugin.class.isAssignableFrom(clazz)) {
+                    server.getLogger().warning("Class " + entry.mainClass + " is annotated with @PluginInfo but does not extend Plugin");
+                    continue;
+                }
+
+                // We have a plugin!
+                pluginClasses.put(clazz.asSubclass(Plugin.class), index);
+            }
+        }
+
+        // Next, initialize the plugins
+        List<Plugin> loaded = new ArrayList<>();
+        for (Map.Entry<Class<? extends Plugin>, PluginIndex> entry : pluginClasses.entrySet()) {
+            PluginInfo info = entry.getKey().getAnnotation(PluginInfo.class);
+            if (plugins.containsKey(info.name().toLowerCase())) {
+                server.getLogger().warning("Plugin " + info.name() + " is already loaded, skipping " + entry.getKey().getName());
+                continue;
+            }
+
+            Plugin plugin = entry.getKey().newInstance();
+            plugins.put(info.name().toLowerCase(), plugin);
+            if (entry.getValue().listeners != null) {
+                pluginIndexes.put(plugin, entry.getValue());
+            }
+            plugin.init(server, this);
+            loaded.add(plugin);
+            server.getLogger().info("Loaded plugin " + info.name() + " (version " + info.version() + ").");
+        }
+        return loaded;
+    }
+
+    /**
+     * Unloads a plugin. The plugin is disabled if it is enabled, and its
+     * listeners, OMP channels and scheduled tasks are removed. Once every
+     * plugin from the same jar has been unloaded, the jar's class loader is
+     * closed so that its classes can be garbage collected; a warning is logged
+     * if the class loader is still reachable some time later.
+     * <p>
+     * A plugin can't be unloaded while other enabled plugins depend or
+     * soft-depend on it, since they would keep using its classes.
+     *
+     * @param plugin the plugin to unload
+     * @throws IllegalStateException if enabled plugins depend on the plugin
+     */
+    public void unloadPlugin(Plugin plugin) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        PluginInfo info = plugin.getPluginInfo();
+        Preconditions.checkArgument(plugins.get(info.name().toLowerCase()) == plugin, "Plugin is not loaded!");
+        List<String> dependents = getEnabledDependents(Collections.singleton(plugin));
+        Preconditions.checkState(dependents.isEmpty(), "Plugin %s can not be unloaded while %s depend on it", info.name(), dependents);
+
+        if (plugin.isEnabled()) {
+            disablePlugin(plugin);
+        }
+        server.getScheduler().cancelTasks(plugin);
+        server.getMessenger().unregisterAll(plugin);
+        plugins.remove(info.name().toLowerCase());
+        pluginIndexes.remove(plugin);
+        eventTimings.remove(plugin);
+        startupTimes.remove(plugin);
+        server.getProfiler().remove(plugin);
+        server.getLogger().info("Unloaded plugin " + info.name() + " (version " + info.version() + ").");
+
+        ClassLoader loader = plugin.getClass().getClassLoader();
+        if (loader instanceof PluginClassLoader && plugins.values().stream().noneMatch(p -> p.getClass().getClassLoader() == loader)) {
+            closeClassLoader((PluginClassLoader) loader);
+        }
+    }
+
+    /**
+     * Reloads a plugin from its jar file, which may have been replaced since
+     * the plugin was loaded. Every plugin from the same jar is unloaded and
+     * loaded again, and the new instances of plugins that were enabled are
+     * enabled. Plugins from other jars that are enabled and depend or
+     * soft-depend on a plugin of the jar must be unloaded first.
+     *
+     * @param plugin the plugin to reload
+     * @return the newly loaded plugins
+     * @throws IllegalStateException if enabled plugins from other jars depend
+     * on a plugin of the jar
+     * @throws Throwable if the plugins could not be loaded again
+     */
+    public List<Plugin> reloadPlugin(Plugin plugin) throws Throwable {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkArgument(plugins.get(plugin.getPluginInfo().name().toLowerCase()) == plugin, "Plugin is not loaded!");
+        ClassLoader loader = plugin.getClass().getClassLoader();
+        Preconditions.checkArgument(loader instanceof PluginClassLoader, "Plugin was not loaded from a jar file");
 
-                while ((entry = zip.getNextEntry()) != null) {
-                    if (!entry.getName().endsWith(".class")) {
-                        continue;
+        List<Plugin> unloaded = new ArrayList<>();
+        for (Plugin p : plugins.values()) {
+            if (p.getClass().getClassLoader() == loader) {
+                unloaded.add(p);
+            }
+        }
+        List<String> dependents = getEnabledDependents(unloaded);
+        Preconditions.checkState(dependents.isEmpty(), "Plugin %s can not be reloaded while %s depend on it", plugin.getPluginInfo().name(), dependents);
+
+        // Plugins of the jar may depend on each other, so disable them before their dependencies
+        Set<String> enabled = new HashSet<>();
+        List<Plugin> order = new ArrayList<>();
+        Set<Plugin> visited = new HashSet<>();
+        for (Plugin p : unloaded) {
+            if (p.isEnabled()) {
+                enabled.add(p.getPluginInfo().name().toLowerCase());
+                addAfterDependencies(p, visited, order);
+            }
+        }
+        Collections.reverse(order);
+        for (Plugin p : order) {
+            if (unloaded.contains(p)) {
+                disablePlugin(p);
+            }
+        }
+        unloaded.forEach(this::unloadPlugin);
+
+        List<Plugin> loaded = loadPlugin(((PluginClassLoader) loader).getFile());
+        List<Plugin> toEnable = new ArrayList<>();
+        for (Plugin p : loaded) {
+            if (enabled.contains(p.getPluginInfo().name().toLowerCase())) {
+                toEnable.add(p);
+            }
+        }
+        sortByDependencies(toEnable).forEach(this::enablePlugin);
+        return loaded;
+    }
+
+    /**
+     * Gets the names of the enabled plugins, other than the specified ones,
+     * that depend or soft-depend on any of them.
+     */
+    private List<String> getEnabledDependents(Collection<Plugin> targets) {
+        List<String> dependents = new ArrayList<>();
+        for (Plugin plugin : plugins.values()) {
+            if (!plugin.isEnabled() || targets.contains(plugin)) {
+                continue;
+            }
+
+            if (dependsOnAny(plugin.getPluginInfo(), targets)) {
+                dependents.add(plugin.getPluginInfo().name());
+            }
+        }
+        return dependents;
+    }
+
+    private boolean dependsOnAny(PluginInfo info, Collection<Plugin> targets) {
+        for (String[] names : new String[][]{info.depends(), info.softDepends()}) {
+            for (String name : names) {
+                if (targets.contains(plugins.get(name.toLowerCase()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void closeClassLoader(PluginClassLoader loader) {
+        classLoaders.remove(loader);
+
+        // Handler lists and timings of events declared by the plugin would keep its classes alive
+        synchronized (registryLock) {
+            handlerLists.keySet().removeIf(eventClass -> eventClass.getClassLoader() == loader);
+        }
+        eventTimings.remove(loader);
+
+        try {
+            loader.close();
+        } catch (IOException ex) {
+            server.getLogger().log(Level.SEVERE, "Could not close the class loader of " + loader.getFile().getName(), ex);
+        }
+        leakDetector.watch(loader, loader.getFile().getName());
+    }
+
+    Server getServer() {
+        return server;
+    }
+
+    /**
+     * Finds a class in the jars of the loaded plugins, for classes that a
+     * plugin's own class loader could not find.
+     *
+     * @param name the binary name of the class
+     * @param requester the class loader looking for the class, which is not
+     * searched again
+     * @return the class, or null if no plugin jar contains it
+     */
+    Class<?> findPluginClass(String name, PluginClassLoader requester) {
+        for (PluginClassLoader loader : classLoaders) {
+            if (loader == requester) {
+                continue;
+            }
+
+            try {
+                return loader.loadLocalClass(name);
+            } catch (ClassNotFoundException ex) {
+                // Not in this jar
+            }
+        }
+        return null;
+    }
+
+    private PluginClassLoader getClassLoader(File jarFile) {
+        for (PluginClassLoader loader : classLoaders) {
+            if (loader.getFile().equals(jarFile)) {
+                return loader;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the jar file names of unloaded plugins whose class loaders are
+     * still reachable well after they were closed, which means the plugin's
+     * classes are leaking memory.
+     *
+     * @return the names of the jars whose class loaders have leaked
+     */
+    public Set<String> getLeakedClassLoaders() {
+        return leakDetector.getLeaks();
+    }
+
+    /**
+     * Gets how long the class loader of an unloaded plugin jar may stay
+     * reachable before it is reported as leaked.
+     *
+     * @param unit the unit to return the grace period in
+     * @return the grace period
+     */
+    public long getLeakGracePeriod(TimeUnit unit) {
+        return leakDetector.getGracePeriod(unit);
+    }
+
+    /**
+     * Sets how long the class loader of an unloaded plugin jar may stay
+     * reachable before it is reported as leaked. Loaders are only reported
+     * once a garbage collection has run after they were unloaded.
+     *
+     * @param gracePeriod the grace period, which must be positive
+     * @param unit the unit of the grace period
+     */
+    public void setLeakGracePeriod(long gracePeriod, TimeUnit unit) {
+        leakDetector.setGracePeriod(gracePeriod, unit);
+    }
+
+    /**
+     * Enables every loaded plugin that is not enabled yet. Plugins are enabled
+     * after the plugins they {@link PluginInfo#depends() depend} and
+     * {@link PluginInfo#softDepends() soft-depend} on, and plugins that don't
+     * depend on each other are enabled concurrently on up to
+     * {@link #getEnableParallelism()} threads. Plugins with missing or
+     * circular dependencies, or whose dependencies failed to enable, are not
+     * enabled.
+     */
+    public void enablePlugins() {
+        Set<Plugin> candidates = new LinkedHashSet<>();
+        for (Plugin plugin : plugins.values()) {
+            if (!plugin.isEnabled()) {
+                candidates.add(plugin);
+            }
+        }
+
+        List<Plugin> sorted = sortByDependencies(candidates);
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(enableParallelism, sorted.size()), new ThreadFactoryBuilder()
+                .setNameFormat("Ogar Plugin Enable Thread #%d").setDaemon(true).build());
+        Map<Plugin, CompletableFuture<Boolean>> enabled = new HashMap<>();
+        try {
+            // Sorted, so every dependency's future exists before its dependents are scheduled
+            for (Plugin plugin : sorted) {
+                PluginInfo info = plugin.getPluginInfo();
+                List<CompletableFuture<Boolean>> after = new ArrayList<>();
+                Map<String, CompletableFuture<Boolean>> required = new LinkedHashMap<>();
+                for (String name : info.depends()) {
+                    CompletableFuture<Boolean> dependency = enabled.get(plugins.get(name.toLowerCase()));
+                    if (dependency != null) {
+                        after.add(dependency);
+                        required.put(name, dependency);
+                    }
+                }
+                for (String name : info.softDepends()) {
+                    CompletableFuture<Boolean> dependency = enabled.get(plugins.get(name.toLowerCase()));
+                    if (dependency != null) {
+                        after.add(dependency);
                     }
+                }
 
-                    String[] splitName = entry.getName().split("/");
-                    if (splitName[splitName.length - 1].contains("$")) {
-                        // Inner class, skip
-                        continue;
+                enabled.put(plugin, CompletableFuture.allOf(after.toArray(new CompletableFuture<?>[0])).thenApplyAsync(v -> {
+                    for (Map.Entry<String, CompletableFuture<Boolean>> dependency : required.entrySet()) {
+                        if (!dependency.getValue().join()) {
+                            server.getLogger().severe("Could not enable plugin " + info.name() + " because its dependency " + dependency.getKey() + " failed to enable");
+                            return false;
+                        }
                     }
 
-                    String className = entry.getName().substring(0, entry.getName().length() - 6).replace('/', '.');
-                    Class<?> clazz = Class.forName(className, true, classLoader);
+                    try {
+                        enablePlugin(plugin);
+                        return true;
+                    } catch (Throwable t) {
+                        server.getLogger().log(Level.SEVERE, "Error while enabling plugin " + info.name(), t);
+                        return false;
+                    }
+                }, pool));
+            }
+            CompletableFuture.allOf(enabled.values().toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            pool.shutdown();
+        }
 
-                    if (Plugin.class.isAssignableFrom(clazz) && clazz.isAnnotationPresent(PluginInfo.class)) {
-                        // We have a plugin!
-                        pluginClasses.add(clazz.asSubclass(Plugin.class));
+        long count = enabled.values().stream().filter(CompletableFuture::join).count();
+        long total = sorted.stream().mapToLong(plugin -> startupTimes.getOrDefault(plugin, 0L)).sum();
+        server.getLogger().info("Enabled " + count + " of " + candidates.size() + " plugins in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms (" + TimeUnit.NANOSECONDS.toMillis(total) + " ms of plugin startup time).");
+    }
+
+    /**
+     * Sorts plugins so that each plugin comes after the plugins it depends
+     * on. Plugins with a missing or circular dependency are logged and left
+     * out, as are the plugins that depend on them. Plugins that are not among
+     * the specified plugins are expected to be enabled already.
+     *
+     * @param candidates the plugins to sort
+     * @return the plugins that can be enabled, in dependency order
+     */
+    private List<Plugin> sortByDependencies(Collection<Plugin> candidates) {
+        Map<Plugin, Boolean> visited = new HashMap<>();
+        List<Plugin> sorted = new ArrayList<>();
+        for (Plugin plugin : candidates) {
+            visit(plugin, candidates, visited, new ArrayDeque<>(), sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * Visits a plugin for {@link #sortByDependencies(Collection)}. The visited
+     * map holds null for plugins being visited, and whether the plugin could
+     * be sorted otherwise.
+     */
+    private boolean visit(Plugin plugin, Collection<Plugin> candidates, Map<Plugin, Boolean> visited, Deque<Plugin> path, List<Plugin> sorted) {
+        if (visited.containsKey(plugin)) {
+            return visited.get(plugin) == Boolean.TRUE;
+        }
+
+        visited.put(plugin, null);
+        path.addLast(plugin);
+        PluginInfo info = plugin.getPluginInfo();
+        boolean satisfied = true;
+        for (String name : info.depends()) {
+            Plugin dependency = plugins.get(name.toLowerCase());
+            if (dependency == null) {
+                server.getLogger().severe("Could not enable plugin " + info.name() + " because its dependency " + name + " is not loaded");
+                satisfied = false;
+            } else if (!candidates.contains(dependency)) {
+                if (!dependency.isEnabled()) {
+                    server.getLogger().severe("Could not enable plugin " + info.name() + " because its dependency " + name + " is not enabled");
+                    satisfied = false;
+                }
+            } else if (visited.containsKey(dependency) && visited.get(dependency) == null) {
+                StringBuilder cycle = new StringBuilder();
+                boolean inCycle = false;
+                for (Plugin p : path) {
+                    inCycle |= p == dependency;
+                    if (inCycle) {
+                        cycle.append(p.getPluginInfo().name()).append(" -> ");
                     }
                 }
+                server.getLogger().severe("Could not enable plugin " + info.name() + " because of a circular dependency: " + cycle + dependency.getPluginInfo().name());
+                satisfied = false;
+            } else if (!visit(dependency, candidates, visited, path, sorted)) {
+                server.getLogger().severe("Could not enable plugin " + info.name() + " because its dependency " + name + " can not be enabled");
+                satisfied = false;
+            }
+        }
+        for (String name : info.softDepends()) {
+            Plugin dependency = plugins.get(name.toLowerCase());
+            // Soft dependencies only affect the order, so one that would close a cycle is simply ignored. That includes
+            // soft dependencies that hard-depend on a plugin being visited, which would otherwise be reported as a
+            // circular dependency depending on the order plugins are visited in
+            if (dependency != null && candidates.contains(dependency) && !visited.containsKey(dependency)
+                    && !dependsOnAny(dependency, path, candidates, new HashSet<>())) {
+                visit(dependency, candidates, visited, path, sorted);
             }
         }
 
-        // Next, initialize the plugins
-        for (Class<? extends Plugin> clazz : pluginClasses) {
-            PluginInfo info = clazz.getAnnotation(PluginInfo.class);
-            Plugin plugin = clazz.newInstance();
-            plugins.put(info.name().toLowerCase(), plugin);
-            plugin.init(server, this);
-            server.getLogger().info("Loaded plugin " + info.name() + " (version " + info.version() + ").");
+        path.removeLast();
+        visited.put(plugin, satisfied);
+        if (satisfied) {
+            sorted.add(plugin);
         }
+        return satisfied;
     }
 
-    public void enablePlugins() {
-        plugins.values().forEach(this::enablePlugin);
+    /**
+     * Checks if a plugin directly or indirectly hard-depends on any of the
+     * specified plugins, following only dependencies among the candidates.
+     */
+    private boolean dependsOnAny(Plugin plugin, Collection<Plugin> targets, Collection<Plugin> candidates, Set<Plugin> seen) {
+        if (!seen.add(plugin)) {
+            return false;
+        }
+
+        for (String name : plugin.getPluginInfo().depends()) {
+            Plugin dependency = plugins.get(name.toLowerCase());
+            if (dependency != null && candidates.contains(dependency)
+                    && (targets.contains(dependency) || dependsOnAny(dependency, targets, candidates, seen))) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Disables every enabled plugin. Plugins are disabled before the plugins
+     * they depend and soft-depend on, and plugins that are not enabled, for
+     * example because a dependency was missing, are skipped.
+     */
     public void disablePlugins() {
-        plugins.values().forEach(this::disablePlugin);
+        List<Plugin> order = new ArrayList<>();
+        Set<Plugin> visited = new HashSet<>();
+        for (Plugin plugin : plugins.values()) {
+            if (plugin.isEnabled()) {
+                addAfterDependencies(plugin, visited, order);
+            }
+        }
+
+        Collections.reverse(order);
+        for (Plugin plugin : order) {
+            try {
+                disablePlugin(plugin);
+            } catch (Throwable t) {
+                server.getLogger().log(Level.SEVERE, "Error while disabling plugin " + plugin.getPluginInfo().name(), t);
+            }
+        }
+    }
+
+    private void addAfterDependencies(Plugin plugin, Set<Plugin> visited, List<Plugin> order) {
+        if (!visited.add(plugin)) {
+            return;
+        }
+
+        PluginInfo info = plugin.getPluginInfo();
+        for (String[] names : new String[][]{info.depends(), info.softDepends()}) {
+            for (String name : names) {
+                Plugin dependency = plugins.get(name.toLowerCase());
+                if (dependency != null && dependency.isEnabled()) {
+                    addAfterDependencies(dependency, visited, order);
+                }
+            }
+        }
+        order.add(plugin);
     }
 
     public void enablePlugin(Plugin plugin) {
@@ -115,8 +608,51 @@ public class PluginManager {
         Preconditions.checkArgument(!plugin.isEnabled(), "Plugin is already enabled!");
 
         PluginInfo info = plugin.getPluginInfo();
-        plugin.setEnabled(true);
-        server.getLogger().info("Enabled plugin " + info.name() + " (version " + info.version() + ").");
+        for (String name : info.depends()) {
+            Plugin dependency = plugins.get(name.toLowerCase());
+            Preconditions.checkState(dependency != null && dependency.isEnabled(), "Plugin %s depends on %s, which is not enabled", info.name(), name);
+        }
+
+        long start = System.nanoTime();
+        try {
+            plugin.setEnabled(true);
+        } finally {
+            startupTimes.put(plugin, System.nanoTime() - start);
+        }
+        server.getLogger().info("Enabled plugin " + info.name() + " (version " + info.version() + ") in "
+                + TimeUnit.NANOSECONDS.toMillis(startupTimes.get(plugin)) + " ms.");
+    }
+
+    /**
+     * Gets how long each plugin's {@link Plugin#onEnable()} took the last time
+     * it was enabled.
+     *
+     * @return an immutable map of startup times in nanoseconds, by plugin
+     */
+    public Map<Plugin, Long> getStartupTimes() {
+        return ImmutableMap.copyOf(startupTimes);
+    }
+
+    /**
+     * Gets the maximum number of plugins that {@link #enablePlugins()} enables
+     * at the same time.
+     *
+     * @return the number of threads plugins are enabled on
+     */
+    public int getEnableParallelism() {
+        return enableParallelism;
+    }
+
+    /**
+     * Sets the maximum number of plugins that {@link #enablePlugins()} enables
+     * at the same time. A parallelism of 1 enables plugins one by one, in
+     * dependency order.
+     *
+     * @param parallelism the number of threads to enable plugins on
+     */
+    public void setEnableParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        this.enableParallelism = parallelism;
     }
 
     public void disablePlugin(Plugin plugin) {
@@ -125,62 +661,389 @@ public class PluginManager {
 
         PluginInfo info = plugin.getPluginInfo();
         plugin.setEnabled(false);
-        listeners.removeAll(plugin);
+        synchronized (registryLock) {
+            publish(registry.without(plugin));
+        }
+        server.getScheduler().cancelTasks(plugin);
+        server.getMessenger().unregisterAll(plugin);
+        eventTimings.remove(plugin);
         server.getLogger().info("Disabled plugin " + info.name() + " (version " + info.version() + ").");
     }
 
     public void registerEvents(Plugin plugin, Listener listener) {
         Preconditions.checkNotNull(plugin, "plugin");
         Preconditions.checkNotNull(listener, "listener");
-        Preconditions.checkState(plugin.isEnabled(), "Can not register a Listener for a disabled Plugin!");
-        Preconditions.checkArgument(!listeners.containsValue(listener), "Attempted to register a Listener that is already registered!");
 
-        listeners.put(plugin, listener);
+        synchronized (registryLock) {
+            // Checked under the lock so that a concurrent disablePlugin can't leave this listener behind
+            Preconditions.checkState(plugin.isEnabled(), "Can not register a Listener for a disabled Plugin!");
+            Preconditions.checkArgument(!registry.listeners.containsValue(listener), "Attempted to register a Listener that is already registered!");
+
+            publish(registry.with(plugin, listener, discoverHandlers(plugin, listener)));
+        }
     }
 
     public void callEvent(Event event) {
         Preconditions.checkNotNull(event, "event");
 
-        // Discover event handlers
-        // TODO - This should probably be moved and cached to execute on registration of the listener
-        Multimap<EventPriority, Method> methods = ArrayListMultimap.create();
-        Map<Method, Listener> reverseMap = new HashMap<>();
-        for (Listener l : listeners.values()) {
-            for (Method m : l.getClass().getDeclaredMethods()) {
-                if (!m.isAnnotationPresent(EventHandler.class)) {
+        RegisteredHandler[] eventHandlers = getHandlerList(event.getClass()).handlers(event);
+        if (eventHandlers.length == 0) {
+            return;
+        }
+
+        // Handlers are already sorted by priority
+        TickProfiler profiler = trackingProfiler();
+        Cancellable cancellable = event instanceof Cancellable ? (Cancellable) event : null;
+        for (RegisteredHandler handler : eventHandlers) {
+            if (cancellable != null && handler.isIgnoringCancelled() && cancellable.isCancelled()) {
+                continue;
+            }
+
+            execute(handler, handler.isBatch() ? Collections.singletonList(event) : event, event.getClass(), profiler);
+        }
+    }
+
+    /**
+     * Calls a batch of events of the same class, such as every occurrence of
+     * a per-entity event during one tick. The handlers are resolved once for
+     * the whole batch. Handlers declared with
+     * {@link EventHandler#batch() batch = true} receive the batch as a single
+     * list; every other handler is called once per event.
+     * <p>
+     * Each handler processes the entire batch before the next handler in
+     * priority order is called. If any handler of the event class is
+     * restricted to {@link EventHandler#keys() keys}, the events are called one
+     * at a time instead, since each event may reach different handlers.
+     *
+     * @param <E> the type of event
+     * @param eventClass the class of the events, used to resolve the handlers
+     * @param events the events to call, all of which must be instances of
+     * {@code eventClass}
+     */
+    public <E extends Event> void callEvents(Class<E> eventClass, List<E> events) {
+        Preconditions.checkNotNull(eventClass, "eventClass");
+        Preconditions.checkNotNull(events, "events");
+
+        RegisteredHandler[] eventHandlers = getHandlerList(eventClass).batchHandlers();
+        if (eventHandlers == null) {
+            events.forEach(this::callEvent);
+            return;
+        }
+
+        if (eventHandlers.length == 0 || events.isEmpty()) {
+            return;
+        }
+
+        TickProfiler profiler = trackingProfiler();
+        boolean cancellable = Cancellable.class.isAssignableFrom(eventClass);
+        List<E> batch = Collections.unmodifiableList(events);
+        for (RegisteredHandler handler : eventHandlers) {
+            boolean skipCancelled = cancellable && handler.isIgnoringCancelled();
+            if (handler.isBatch()) {
+                execute(handler, skipCancelled ? withoutCancelled(batch) : batch, eventClass, profiler);
+                continue;
+            }
+
+            for (E event : batch) {
+                if (skipCancelled && ((Cancellable) event).isCancelled()) {
                     continue;
                 }
 
-                if (m.getParameterCount() == 1 && m.getParameterTypes()[0].equals(event.getClass())) {
-                    // Bingo!
-                    EventHandler annotation = m.getAnnotation(EventHandler.class);
-                    EventPriority priority = annotation.priority();
-                    if (priority != null) {
-                        // priority must be non-null, no funny business here
-                        methods.put(priority, m);
-                        reverseMap.put(m, l);
-                    }
-                }
+                execute(handler, event, eventClass, profiler);
             }
         }
+    }
 
-        // Execute the handlers in order of priority
-        for (EventPriority priority : EventPriority.values()) {
-            for (Method m : methods.get(priority)) {
-                if (event instanceof Cancellable) {
-                    EventHandler annotation = m.getAnnotation(EventHandler.class);
-                    if (annotation.ignoreCancelled() && ((Cancellable) event).isCancelled()) {
-                        continue;
-                    }
-                }
+    /**
+     * Gets the server's profiler if it is tracking plugin time. Looked up once
+     * per event call rather than per handler.
+     */
+    TickProfiler trackingProfiler() {
+        TickProfiler profiler = server.getProfiler();
+        return profiler.isTrackingPlugins() ? profiler : null;
+    }
+
+    private void execute(RegisteredHandler handler, Object argument, Class<? extends Event> eventClass, TickProfiler profiler) {
+        boolean sampled = eventTimings.shouldSample(handler);
+        long start = sampled || profiler != null ? System.nanoTime() : 0;
+        Throwable failure = null;
+        try {
+            handler.execute(argument);
+        } catch (Throwable t) {
+            failure = t;
+        }
+
+        // Record before logging, so the handler isn't charged for the log output
+        if (sampled || profiler != null) {
+            long elapsed = System.nanoTime() - start;
+            if (sampled) {
+                eventTimings.record(handler, eventClass, elapsed);
+            }
+            if (profiler != null) {
+                profiler.recordPlugin(handler.getPlugin(), elapsed);
+            }
+        }
+        if (failure != null) {
+            server.getLogger().log(Level.SEVERE, "Error while handling event " + eventClass.getCanonicalName(), failure);
+        }
+    }
+
+    private static <E> List<E> withoutCancelled(List<E> events) {
+        for (int i = 0; i < events.size(); i++) {
+            if (!((Cancellable) events.get(i)).isCancelled()) {
+                continue;
+            }
 
-                try {
-                    m.invoke(reverseMap.get(m), event);
-                } catch (Throwable t) {
-                    server.getLogger().log(Level.SEVERE, "Error while handling event " + event.getClass().getCanonicalName(), t);
+            // Only copy the batch once a cancelled event is actually found
+            List<E> filtered = new ArrayList<>(events.subList(0, i));
+            for (int j = i + 1; j < events.size(); j++) {
+                if (!((Cancellable) events.get(j)).isCancelled()) {
+                    filtered.add(events.get(j));
                 }
             }
+            return Collections.unmodifiableList(filtered);
+        }
+        return events;
+    }
+
+    /**
+     * Calls an event asynchronously using the async event executor. Handlers
+     * are called on a single executor thread in the same priority order as
+     * {@link #callEvent(Event)}, so cancellation behaves identically.
+     *
+     * @param <E> the type of event
+     * @param event the event to call
+     * @return a future that is completed with the event once every handler
+     * has been called
+     */
+    public <E extends AsyncEvent> CompletableFuture<E> callEventAsync(E event) {
+        Preconditions.checkNotNull(event, "event");
+        return CompletableFuture.supplyAsync(() -> {
+            callEvent(event);
+            return event;
+        }, getAsyncEventExecutor());
+    }
+
+    /**
+     * Gets the executor used by {@link #callEventAsync(AsyncEvent)}. Unless
+     * one has been set, a cached pool of daemon threads is created on first
+     * use.
+     *
+     * @return the async event executor
+     */
+    public synchronized Executor getAsyncEventExecutor() {
+        if (asyncEventExecutor == null) {
+            asyncEventExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("Ogar Async Event Thread #%d").setDaemon(true).build());
+        }
+        return asyncEventExecutor;
+    }
+
+    /**
+     * Sets the executor used by {@link #callEventAsync(AsyncEvent)}.
+     *
+     * @param executor the executor to dispatch async events on
+     */
+    public synchronized void setAsyncEventExecutor(Executor executor) {
+        Preconditions.checkNotNull(executor, "executor");
+        this.asyncEventExecutor = executor;
+    }
+
+    private List<RegisteredHandler> discoverHandlers(Plugin plugin, Listener listener) {
+        PluginIndex index = pluginIndexes.get(plugin);
+        List<PluginIndex.HandlerEntry> entries = index == null ? null : index.listeners.get(listener.getClass().getName());
+        if (entries != null) {
+            try {
+                return indexedHandlers(plugin, listener, entries);
+            } catch (ReflectiveOperationException | IllegalArgumentException ex) {
+                server.getLogger().log(Level.WARNING, "Plugin " + plugin.getPluginInfo().name() + " has an outdated plugin index for "
+                        + listener.getClass().getName() + ", falling back to reflection", ex);
+            }
+        }
+
+        return reflectHandlers(plugin, listener);
+    }
+
+    /**
+     * Creates handlers from a listener's entries in its plugin's index, which
+     * avoids reflecting over every method of the listener.
+     */
+    private List<RegisteredHandler> indexedHandlers(Plugin plugin, Listener listener, List<PluginIndex.HandlerEntry> entries) throws ReflectiveOperationException {
+        Class<?> listenerClass = listener.getClass();
+        ClassLoader loader = listenerClass.getClassLoader();
+        List<RegisteredHandler> result = new ArrayList<>();
+        for (PluginIndex.HandlerEntry entry : entries) {
+            Method m = listenerClass.getDeclaredMethod(entry.method, Class.forName(entry.parameter, false, loader));
+            Class<?> eventClass = Class.forName(entry.event, false, loader);
+            if (!(Event.class.isAssignableFrom(eventClass) || eventClass.isInterface())) {
+                server.getLogger().warning("Plugin " + plugin.getPluginInfo().name() + " has an invalid event handler " + m.toGenericString());
+                continue;
+            }
+
+            m.setAccessible(true);
+            result.add(new RegisteredHandler(plugin, listener, m, eventClass, EventPriority.valueOf(entry.priority), entry.ignoreCancelled, entry.batch,
+                    entry.keys == null ? ImmutableSet.of() : ImmutableSet.copyOf(entry.keys), handlerSequence++));
         }
+        return result;
+    }
+
+    private List<RegisteredHandler> reflectHandlers(Plugin plugin, Listener listener) {
+        List<RegisteredHandler> result = new ArrayList<>();
+        for (Method m : listener.getClass().getDeclaredMethods()) {
+            EventHandler annotation = m.getAnnotation(EventHandler.class);
+            if (annotation == null) {
+                continue;
+            }
+
+            // Interfaces are accepted so that handlers can listen for e.g. all Cancellable events
+            Class<?> eventClass = m.getParameterCount() != 1 ? null
+                    : annotation.batch() ? getBatchEventClass(m) : m.getParameterTypes()[0];
+            if (eventClass == null || !(Event.class.isAssignableFrom(eventClass) || eventClass.isInterface())) {
+                server.getLogger().warning("Plugin " + plugin.getPluginInfo().name() + " has an invalid event handler " + m.toGenericString());
+                continue;
+            }
+
+            EventPriority priority = annotation.priority();
+            if (priority == null) {
+                // priority must be non-null, no funny business here
+                continue;
+            }
+
+            m.setAccessible(true);
+            result.add(new RegisteredHandler(plugin, listener, m, eventClass, priority, annotation.ignoreCancelled(), annotation.batch(),
+                    ImmutableSet.copyOf(annotation.keys()), handlerSequence++));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the element type of a batch handler's {@code List} parameter.
+     *
+     * @return the event class, or null if the parameter is not a list of a
+     * concrete type
+     */
+    private static Class<?> getBatchEventClass(Method m) {
+        if (m.getParameterTypes()[0] != List.class || !(m.getGenericParameterTypes()[0] instanceof ParameterizedType)) {
+            return null;
+        }
+
+        Type elementType = ((ParameterizedType) m.getGenericParameterTypes()[0]).getActualTypeArguments()[0];
+        if (elementType instanceof WildcardType) {
+            // List<? extends SomeEvent>
+            elementType = ((WildcardType) elementType).getUpperBounds()[0];
+        }
+        return elementType instanceof Class ? (Class<?>) elementType : null;
+    }
+
+    /**
+     * Gets the handler list for the specified event class. The returned
+     * instance stays valid and up to date for the lifetime of this plugin
+     * manager.
+     *
+     * @param eventClass the concrete event class
+     * @return the handler list for the event class
+     */
+    public HandlerList getHandlerList(Class<? extends Event> eventClass) {
+        // Resolution walks the class hierarchy, so only do it once per event class
+        HandlerList list = handlerLists.get(eventClass);
+        if (list == null) {
+            // New lists are created under the registry lock so they can't miss a concurrent update
+            synchronized (registryLock) {
+                list = handlerLists.computeIfAbsent(eventClass, c -> resolve(registry, new HandlerList(c)));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Checks if any handler would receive an event of the specified class.
+     * This can be used to avoid constructing events that no plugin listens
+     * for.
+     *
+     * @param eventClass the concrete event class
+     * @return true if at least one handler is registered for the event class
+     */
+    public boolean hasListeners(Class<? extends Event> eventClass) {
+        Preconditions.checkNotNull(eventClass, "eventClass");
+        return getHandlerList(eventClass).hasListeners();
+    }
+
+    /**
+     * Publishes a new registry snapshot and re-resolves every handler list
+     * from it. Must be called while holding the registry lock.
+     */
+    private void publish(Registry snapshot) {
+        registry = snapshot;
+        for (HandlerList list : handlerLists.values()) {
+            resolve(snapshot, list);
+        }
+    }
+
+    /**
+     * Collects every handler that accepts the event class of the specified
+     * list, which includes handlers for any of its superclasses and
+     * interfaces, sorted by priority and then by registration order. Handlers
+     * restricted to keys are indexed by each of their keys.
+     *
+     * @return the updated list
+     */
+    private static HandlerList resolve(Registry snapshot, HandlerList list) {
+        Class<? extends Event> eventClass = list.getEventClass();
+        boolean keyedEvent = KeyedEvent.class.isAssignableFrom(eventClass);
+        List<RegisteredHandler> unkeyed = new ArrayList<>();
+        Multimap<String, RegisteredHandler> byKey = ArrayListMultimap.create();
+        for (RegisteredHandler handler : snapshot.handlers.values()) {
+            if (!handler.getEventClass().isAssignableFrom(eventClass)) {
+                continue;
+            }
+
+            if (handler.getKeys().isEmpty()) {
+                unkeyed.add(handler);
+            } else if (keyedEvent) {
+                handler.getKeys().forEach(key -> byKey.put(key, handler));
+            }
+        }
+
+        RegisteredHandler[] handlers = unkeyed.toArray(new RegisteredHandler[0]);
+        Arrays.sort(handlers, HANDLER_ORDER);
+
+        // Each key gets its own complete chain, so dispatch is a single lookup
+        ImmutableMap.Builder<String, RegisteredHandler[]> keyed = ImmutableMap.builder();
+        for (String key : byKey.keySet()) {
+            List<RegisteredHandler> chain = new ArrayList<>(unkeyed);
+            chain.addAll(byKey.get(key));
+            RegisteredHandler[] sorted = chain.toArray(new RegisteredHandler[0]);
+            Arrays.sort(sorted, HANDLER_ORDER);
+            keyed.put(key, sorted);
+        }
+
+        list.update(handlers, keyed.build());
+        return list;
+    }
+
+    /**
+     * Gets all event handlers registered by the specified plugin, in
+     * registration order.
+     *
+     * @param plugin the plugin
+     * @return an immutable list of the plugin's handlers
+     */
+    public List<RegisteredHandler> getRegisteredHandlers(Plugin plugin) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        return registry.handlers.get(plugin);
+    }
+
+    Collection<RegisteredHandler> getAllRegisteredHandlers() {
+        return registry.handlers.values();
+    }
+
+    /**
+     * Gets the event timings, which record how long event handlers take.
+     *
+     * @return the event timings of this plugin manager
+     */
+    public EventTimings getEventTimings() {
+        return eventTimings;
     }
 
     /**
@@ -192,4 +1055,47 @@ public class PluginManager {
     public Plugin getPlugin(String name) {
         return plugins.get(name.toLowerCase());
     }
+
+    /**
+     * An immutable snapshot of all registered listeners and their handlers.
+     * Snapshots are replaced as a whole whenever a listener is registered or a
+     * plugin is disabled, so readers never need to lock.
+     */
+    private static final class Registry {
+
+        static final Registry EMPTY = new Registry(ImmutableListMultimap.of(), ImmutableListMultimap.of());
+
+        final ImmutableListMultimap<Plugin, Listener> listeners;
+        final ImmutableListMultimap<Plugin, RegisteredHandler> handlers;
+
+        Registry(ImmutableListMultimap<Plugin, Listener> listeners, ImmutableListMultimap<Plugin, RegisteredHandler> handlers) {
+            this.listeners = listeners;
+            this.handlers = handlers;
+        }
+
+        Registry with(Plugin plugin, Listener listener, List<RegisteredHandler> added) {
+            return new Registry(ImmutableListMultimap.<Plugin, Listener>builder().putAll(listeners).put(plugin, listener).build(),
+                    ImmutableListMultimap.<Plugin, RegisteredHandler>builder().putAll(handlers).putAll(plugin, added).build());
+        }
+
+        Registry without(Plugin plugin) {
+            if (!listeners.containsKey(plugin)) {
+                return this;
+            }
+
+            ImmutableListMultimap.Builder<Plugin, Listener> remainingListeners = ImmutableListMultimap.builder();
+            listeners.asMap().forEach((owner, values) -> {
+                if (owner != plugin) {
+                    remainingListeners.putAll(owner, values);
+                }
+            });
+            ImmutableListMultimap.Builder<Plugin, RegisteredHandler> remainingHandlers = ImmutableListMultimap.builder();
+            handlers.asMap().forEach((owner, values) -> {
+                if (owner != plugin) {
+                    remainingHandlers.putAll(owner, values);
+                }
+            });
+            return new Registry(remainingListeners.build(), remainingHandlers.build());
+        }
+    }
 }
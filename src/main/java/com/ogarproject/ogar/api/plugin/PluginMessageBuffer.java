@@ -0,0 +1,113 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted plugin message payload allocated from a
+ * {@link PluginBufferPool}. A new buffer has a reference count of one; every
+ * {@link #retain()} must be paired with a {@link #release()}, and the
+ * underlying {@link ByteBuffer} is returned to the pool once the count drops
+ * to zero. The buffer must not be used after its last release.
+ * <p>
+ * Passing a buffer to
+ * {@link com.ogarproject.ogar.api.Player#sendPluginMessage(ChannelHandle, PluginMessageBuffer)}
+ * hands over one reference, which lets the server write the payload into its
+ * outbound frame without copying it and release it once it has been sent.
+ */
+public final class PluginMessageBuffer {
+
+    private final PluginBufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    PluginMessageBuffer(PluginBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Gets the underlying buffer. Writers fill it and {@link ByteBuffer#flip()
+     * flip} it before sending; the payload is the bytes between its position
+     * and limit. Readers should use {@link ByteBuffer#duplicate()} if other
+     * references may still read the payload.
+     *
+     * @return the underlying buffer
+     * @throws IllegalStateException if the buffer has been released
+     */
+    public ByteBuffer getBuffer() {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Buffer has already been released");
+        }
+        return buffer;
+    }
+
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    public int getReferenceCount() {
+        return references.get();
+    }
+
+    /**
+     * Adds a reference to this buffer.
+     *
+     * @return this buffer
+     * @throws IllegalStateException if the buffer has been released
+     */
+    public PluginMessageBuffer retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Buffer has already been released");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Removes a reference from this buffer, returning it to its pool if this
+     * was the last one.
+     *
+     * @return true if the buffer was returned to its pool
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public boolean release() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Buffer has already been released");
+            }
+        } while (!references.compareAndSet(count, count - 1));
+
+        if (count == 1) {
+            pool.recycle(buffer);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "PluginMessageBuffer{" + buffer + ", references=" + references.get() + "}";
+    }
+}
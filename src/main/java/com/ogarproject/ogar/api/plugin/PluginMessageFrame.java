@@ -0,0 +1,81 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A PluginMessageFrame is an immutable plugin message that can be sent to any
+ * number of players. Frames are created by the {@link Messenger}, which
+ * copies the payload once, so a broadcast does not re-encode the message for
+ * every recipient.
+ * <p>
+ * Server implementations can cache their wire encoding of the frame with
+ * {@link #getEncoded(Function)}, so the frame is also framed for the network
+ * only once.
+ */
+public final class PluginMessageFrame {
+
+    private final ChannelHandle channel;
+    private final ByteBuffer payload;
+    private final Map<Function<? super PluginMessageFrame, ?>, Object> encoded = new ConcurrentHashMap<>(2);
+
+    PluginMessageFrame(ChannelHandle channel, ByteBuffer payload) {
+        this.channel = channel;
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    public ChannelHandle getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets a read-only view of the payload.
+     *
+     * @return a new view positioned at the start of the payload
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    public int getSize() {
+        return payload.remaining();
+    }
+
+    /**
+     * Gets this frame encoded by the given encoder, encoding it on first use.
+     * The result is cached per encoder, so encoders should be shared
+     * constants rather than a new lambda per call, and results must not be
+     * modified.
+     *
+     * @param <T> the encoded type
+     * @param encoder the function encoding this frame
+     * @return the cached encoding
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getEncoded(Function<? super PluginMessageFrame, ? extends T> encoder) {
+        return (T) encoded.computeIfAbsent(encoder, e -> e.apply(this));
+    }
+
+    @Override
+    public String toString() {
+        return "PluginMessageFrame{channel=" + channel.getName() + ", size=" + getSize() + "}";
+    }
+}
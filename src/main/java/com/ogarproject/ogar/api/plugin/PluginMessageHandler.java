@@ -0,0 +1,39 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.ogarproject.ogar.api.Player;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives plugin messages on a channel registered with
+ * {@link Messenger#registerIncomingHandler(Plugin, String, PluginMessageHandler)}.
+ */
+@FunctionalInterface
+public interface PluginMessageHandler {
+
+    /**
+     * Called when a player sends a message on the handler's channel. The
+     * payload is only valid during the call; handlers that keep it must copy
+     * it.
+     *
+     * @param player the player that sent the message
+     * @param channel the channel the message was received on
+     * @param data a read-only view of the payload
+     */
+    public void onPluginMessage(Player player, ChannelHandle channel, ByteBuffer data);
+}
@@ -0,0 +1,306 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds plugin main classes in jar files. Jars with a pre-built
+ * {@link PluginIndex} are read from their index; other jars are scanned by
+ * reading class file headers directly, without loading or initializing any
+ * classes. A class is a candidate if it is a concrete, top-level class
+ * annotated with {@link PluginInfo}; whether it actually extends
+ * {@link Plugin} can only be checked once it is loaded.
+ */
+final class PluginScanner {
+
+    private static final byte[] PLUGIN_INFO_DESCRIPTOR = ("L" + PluginInfo.class.getName().replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.UTF_8);
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    /**
+     * Static-use class.
+     */
+    private PluginScanner() {
+    }
+
+    /**
+     * Indexes the specified jar files in parallel.
+     *
+     * @param jarFiles the jar files to index
+     * @return the index of each jar file, in the same order
+     * @throws IOException if a jar file could not be read
+     */
+    static List<PluginIndex> index(File[] jarFiles) throws IOException {
+        try {
+            return Arrays.stream(jarFiles).parallel()
+                    .map(PluginScanner::indexUnchecked)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static PluginIndex indexUnchecked(File jarFile) {
+        try {
+            return index(jarFile);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Indexes a single jar file. If the jar contains a pre-built
+     * {@link PluginIndex} that lists plugins which are all present in the jar,
+     * that is used as is; otherwise the jar is scanned for plugin classes. An
+     * incremental build can leave a jar with an index that is missing
+     * plugins, so the index is not trusted when it lists none.
+     *
+     * @param jarFile the jar file to index
+     * @return the index of the jar
+     * @throws IOException if the jar file could not be read
+     */
+    static PluginIndex index(File jarFile) throws IOException {
+        try (ZipFile zip = new ZipFile(jarFile)) {
+            PluginIndex prebuilt = PluginIndex.read(zip);
+            if (prebuilt != null && isComplete(prebuilt, zip)) {
+                return prebuilt;
+            }
+
+            PluginIndex index = new PluginIndex();
+            for (String className : scan(zip)) {
+                PluginIndex.PluginEntry entry = new PluginIndex.PluginEntry();
+                entry.mainClass = className;
+                index.plugins.add(entry);
+            }
+            if (prebuilt != null) {
+                // Listener entries are checked against the classes when they are used
+                index.listeners = prebuilt.listeners;
+            }
+            return index;
+        }
+    }
+
+    private static boolean isComplete(PluginIndex index, ZipFile zip) {
+        if (index.plugins.isEmpty()) {
+            return false;
+        }
+        for (PluginIndex.PluginEntry entry : index.plugins) {
+            if (entry.mainClass == null || zip.getEntry(entry.mainClass.replace('.', '/') + ".class") == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans a single jar file.
+     *
+     * @param zip the jar file to scan
+     * @return the names of all candidate plugin classes in the jar
+     * @throws IOException if the jar file could not be read
+     */
+    static List<String> scan(ZipFile zip) throws IOException {
+        List<String> result = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!name.endsWith(".class") || name.lastIndexOf('$') > name.lastIndexOf('/')) {
+                // Not a class, or an inner class
+                continue;
+            }
+
+            byte[] bytes;
+            try (InputStream in = zip.getInputStream(entry)) {
+                bytes = ByteStreams.toByteArray(in);
+            }
+
+            try {
+                if (isCandidate(ByteBuffer.wrap(bytes))) {
+                    result.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                }
+            } catch (RuntimeException ex) {
+                // Malformed or truncated class file; the JVM would have rejected it as well
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a class file is a concrete class annotated with
+     * {@link PluginInfo}.
+     *
+     * @param buf the contents of the class file
+     * @return true if the class is a plugin candidate
+     */
+    static boolean isCandidate(ByteBuffer buf) {
+        if (buf.getInt() != 0xCAFEBABE) {
+            return false;
+        }
+        buf.position(buf.position() + 4); // minor and major version
+
+        // Walk the constant pool, remembering where each UTF-8 entry starts
+        int poolCount = buf.getShort() & 0xFFFF;
+        int[] utf8Offsets = new int[poolCount];
+        int descriptorIndex = -1;
+        for (int i = 1; i < poolCount; i++) {
+            int tag = buf.get();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8Offsets[i] = buf.position();
+                    int length = buf.getShort() & 0xFFFF;
+                    if (descriptorIndex == -1 && utf8Equals(buf, utf8Offsets[i], PLUGIN_INFO_DESCRIPTOR)) {
+                        descriptorIndex = i;
+                    }
+                    buf.position(buf.position() + length);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    buf.position(buf.position() + 2);
+                    break;
+                case 15: // MethodHandle
+                    buf.position(buf.position() + 3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    buf.position(buf.position() + 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    buf.position(buf.position() + 8);
+                    i++; // Takes up two entries
+                    break;
+                default:
+                    return false;
+            }
+        }
+
+        if (descriptorIndex == -1) {
+            // PluginInfo isn't referenced at all, which rules out most classes early
+            return false;
+        }
+
+        int access = buf.getShort() & 0xFFFF;
+        if ((access & (ACC_INTERFACE | ACC_ABSTRACT)) != 0) {
+            return false;
+        }
+
+        buf.position(buf.position() + 4); // this_class and super_class
+        int interfaces = buf.getShort() & 0xFFFF;
+        buf.position(buf.position() + interfaces * 2);
+        skipMembers(buf); // fields
+        skipMembers(buf); // methods
+
+        int attributes = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < attributes; i++) {
+            int nameIndex = buf.getShort() & 0xFFFF;
+            int length = buf.getInt();
+            int end = buf.position() + length;
+            if (utf8Equals(buf, utf8Offsets[nameIndex], RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = buf.getShort() & 0xFFFF;
+                for (int j = 0; j < annotations; j++) {
+                    if ((buf.getShort() & 0xFFFF) == descriptorIndex) {
+                        return true;
+                    }
+                    skipElementValuePairs(buf);
+                }
+            }
+            buf.position(end);
+        }
+        return false;
+    }
+
+    private static boolean utf8Equals(ByteBuffer buf, int offset, byte[] expected) {
+        if (offset == 0 || (buf.getShort(offset) & 0xFFFF) != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(offset + 2 + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void skipMembers(ByteBuffer buf) {
+        int count = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            buf.position(buf.position() + 6); // access_flags, name_index, descriptor_index
+            int attributes = buf.getShort() & 0xFFFF;
+            for (int j = 0; j < attributes; j++) {
+                buf.position(buf.position() + 2);
+                int length = buf.getInt();
+                buf.position(buf.position() + length);
+            }
+        }
+    }
+
+    private static void skipElementValuePairs(ByteBuffer buf) {
+        int pairs = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < pairs; i++) {
+            buf.position(buf.position() + 2); // element_name_index
+            skipElementValue(buf);
+        }
+    }
+
+    private static void skipElementValue(ByteBuffer buf) {
+        int tag = buf.get();
+        switch (tag) {
+            case 'e': // Enum constant
+                buf.position(buf.position() + 4);
+                break;
+            case '@': // Nested annotation
+                buf.position(buf.position() + 2);
+                skipElementValuePairs(buf);
+                break;
+            case '[': // Array
+                int values = buf.getShort() & 0xFFFF;
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(buf);
+                }
+                break;
+            default: // Constant or class
+                buf.position(buf.position() + 2);
+                break;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.ogarproject.ogar.api.event.EventPriority;
+import com.ogarproject.ogar.api.event.Listener;
+import java.lang.reflect.Method;
+import java.util.Set;
+
+/**
+ * A RegisteredHandler is a single {@link com.ogarproject.ogar.api.event.EventHandler}
+ * method that has been discovered when its listener was registered. Handlers
+ * are immutable once created.
+ */
+public final class RegisteredHandler {
+
+    private final Plugin plugin;
+    private final Listener listener;
+    private final Method method;
+    private final Class<?> eventClass;
+    private final EventPriority priority;
+    private final boolean ignoreCancelled;
+    private final boolean batch;
+    private final Set<String> keys;
+    private final long sequence;
+    private final EventExecutor executor;
+    private final ExecutorMode executorMode;
+    private final TimingHistogram timings = new TimingHistogram();
+    // Zero until the first call, see EventTimings#shouldSample
+    int sampleCountdown;
+
+    RegisteredHandler(Plugin plugin, Listener listener, Method method, Class<?> eventClass, EventPriority priority, boolean ignoreCancelled, boolean batch, Set<String> keys, long sequence) {
+        this.plugin = plugin;
+        this.listener = listener;
+        this.method = method;
+        this.eventClass = eventClass;
+        this.priority = priority;
+        this.ignoreCancelled = ignoreCancelled;
+        this.batch = batch;
+        this.keys = keys;
+        this.sequence = sequence;
+
+        // Prefer the fastest executor that can be bound for this method
+        EventExecutor bound = EventExecutors.generate(method);
+        if (bound != null) {
+            this.executor = bound;
+            this.executorMode = ExecutorMode.GENERATED;
+        } else if ((bound = EventExecutors.methodHandle(method)) != null) {
+            this.executor = bound;
+            this.executorMode = ExecutorMode.METHOD_HANDLE;
+        } else {
+            this.executor = EventExecutors.reflect(method);
+            this.executorMode = ExecutorMode.REFLECTION;
+        }
+    }
+
+    void execute(Object argument) throws Throwable {
+        executor.execute(listener, argument);
+    }
+
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the type of event this handler accepts. This may be a superclass
+     * of the events the handler receives, or an interface such as
+     * {@link com.ogarproject.ogar.api.event.Cancellable}.
+     *
+     * @return the handler's parameter type
+     */
+    public Class<?> getEventClass() {
+        return eventClass;
+    }
+
+    public EventPriority getPriority() {
+        return priority;
+    }
+
+    public boolean isIgnoringCancelled() {
+        return ignoreCancelled;
+    }
+
+    /**
+     * Checks if this is a batch handler, which receives a list of events
+     * instead of a single event.
+     *
+     * @return true if this handler receives batches of events
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Gets the sampled timings of this handler. See {@link EventTimings}.
+     *
+     * @return the handler's timings
+     */
+    public TimingHistogram getTimings() {
+        return timings;
+    }
+
+    /**
+     * Gets the event keys this handler is restricted to. See
+     * {@link com.ogarproject.ogar.api.event.EventHandler#keys()}.
+     *
+     * @return an immutable set of keys, empty if the handler receives events
+     * with any key
+     */
+    public Set<String> getKeys() {
+        return keys;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the mode this handler was bound with. See {@link ExecutorMode}.
+     *
+     * @return the mode used to invoke this handler
+     */
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+}
@@ -16,6 +16,10 @@
  */
 package com.ogarproject.ogar.api.plugin;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 /**
  * A Scheduler can be used to schedule tasks to run in the future. The
  * asynchronous methods in this interface are preferred over their synchronous
@@ -80,4 +84,40 @@ public interface Scheduler {
      * did not exist or the task was already canceled
      */
     public boolean cancelTask(int id);
+
+    /**
+     * Cancels every task scheduled by a plugin.
+     *
+     * @param plugin the plugin whose tasks to cancel
+     */
+    public void cancelTasks(Plugin plugin);
+
+    /**
+     * Calls a task synchronously (during the next server tick) and completes
+     * the returned future with its result. This is how asynchronous tasks
+     * hand their results back to the server thread, for example:
+     * <pre>
+     * scheduler.supplyAsync(plugin, this::loadStats)
+     *         .thenCompose(stats -&gt; scheduler.callSync(plugin, () -&gt; applyStats(stats)));
+     * </pre>
+     *
+     * @param <T> the type of the result
+     * @param plugin the owning plugin of this task
+     * @param task the task to call
+     * @return a future completed on the server thread with the task's result,
+     * or exceptionally if the task throws or the plugin is disabled first
+     */
+    public <T> CompletableFuture<T> callSync(Plugin plugin, Callable<T> task);
+
+    /**
+     * Runs a task asynchronously (outside of the server tick) as soon as
+     * possible and completes the returned future with its result.
+     *
+     * @param <T> the type of the result
+     * @param plugin the owning plugin of this task
+     * @param task the task to run
+     * @return a future completed with the task's result, or exceptionally if
+     * the task throws, could not be run, or is cancelled before it runs
+     */
+    public <T> CompletableFuture<T> supplyAsync(Plugin plugin, Supplier<T> task);
 }
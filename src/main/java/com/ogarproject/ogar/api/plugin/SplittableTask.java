@@ -0,0 +1,48 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+/**
+ * A synchronous task that can spread its work over several ticks. When the
+ * scheduler has a {@link TimingWheelScheduler#setTickBudget(long, java.util.concurrent.TimeUnit)
+ * tick budget}, it passes the end of the budget to the task, which should
+ * stop at a convenient point once that time has passed and resume on the next
+ * tick.
+ */
+@FunctionalInterface
+public interface SplittableTask extends Runnable {
+
+    /**
+     * Runs the task until it is done or the deadline has passed.
+     *
+     * @param deadline the {@link System#nanoTime()} value at which the task
+     * should yield
+     * @return true if the task has more work to do on the next tick, false if
+     * it is done
+     */
+    public boolean run(long deadline);
+
+    /**
+     * Runs the task to completion, without yielding.
+     */
+    @Override
+    public default void run() {
+        while (run(Long.MAX_VALUE)) {
+            // Keep going until done
+        }
+    }
+}
@@ -0,0 +1,604 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.base.Preconditions;
+import com.ogarproject.ogar.api.Server;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * A Scheduler implementation based on a hierarchical timing wheel. The server
+ * calls {@link #tick()} once per tick, which runs the synchronous tasks that
+ * are due and hands the asynchronous ones to an executor.
+ * <p>
+ * Scheduling and cancelling a task take constant time regardless of how many
+ * tasks are pending. The wheel has several levels of 64 slots; the first
+ * level holds tasks due within 64 ticks, and each further level covers 64
+ * times the range of the previous one. Whenever a lower level wraps around,
+ * the tasks of the next slot one level up are moved down, so each task is
+ * only moved a handful of times before it runs.
+ * <p>
+ * Synchronous tasks can be limited to a {@link #setTickBudget(long, TimeUnit)
+ * budget} per tick. Due tasks that don't fit in the budget are deferred to the
+ * following ticks, taking turns between plugins so one plugin's burst of tasks
+ * can't hold back everyone else's. Long tasks can implement
+ * {@link SplittableTask} to yield when the budget runs out.
+ * <p>
+ * Tasks can be scheduled and cancelled from any thread.
+ */
+public class TimingWheelScheduler implements Scheduler {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 5;
+
+    private final Server server;
+    private final AsyncTaskExecutor asyncExecutor;
+    private final Task[][] wheels = new Task[LEVELS][WHEEL_SIZE];
+    private final Map<Integer, Task> tasks = new HashMap<>();
+    private final Map<Plugin, Set<Task>> pluginTasks = new HashMap<>();
+    private long currentTick = 0;
+    private int nextId = 1;
+    // Only used by the thread calling tick()
+    private final Map<Plugin, ArrayDeque<Task>> deferred = new HashMap<>();
+    private final ArrayDeque<Plugin> rotation = new ArrayDeque<>();
+    private volatile int deferredTasks = 0;
+    private volatile long tickBudgetNanos = 0;
+    // Lock-free, so any number of threads can hand off calls without contending with the tick
+    private final Queue<SyncCall<?>> syncCalls = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a scheduler that runs asynchronous tasks on a default
+     * {@link AsyncTaskExecutor}.
+     *
+     * @param server the server, used for logging task failures
+     */
+    public TimingWheelScheduler(Server server) {
+        this(server, new AsyncTaskExecutor(server));
+    }
+
+    /**
+     * Creates a scheduler that runs asynchronous tasks on the specified
+     * executor, with the default per-plugin limits.
+     *
+     * @param server the server, used for logging task failures
+     * @param asyncExecutor the executor for asynchronous tasks
+     */
+    public TimingWheelScheduler(Server server, Executor asyncExecutor) {
+        this(server, new AsyncTaskExecutor(server, asyncExecutor));
+    }
+
+    /**
+     * Creates a scheduler that runs asynchronous tasks on the specified
+     * executor.
+     *
+     * @param server the server, used for logging task failures
+     * @param asyncExecutor the executor for asynchronous tasks
+     */
+    public TimingWheelScheduler(Server server, AsyncTaskExecutor asyncExecutor) {
+        Preconditions.checkNotNull(server, "server");
+        Preconditions.checkNotNull(asyncExecutor, "asyncExecutor");
+        this.server = server;
+        this.asyncExecutor = asyncExecutor;
+        for (Task[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Task();
+            }
+        }
+    }
+
+    @Override
+    public int runTaskLater(Plugin plugin, Runnable task, long delay) {
+        return schedule(plugin, task, false, delay, 0);
+    }
+
+    @Override
+    public int runAsyncTaskLater(Plugin plugin, Runnable task, long delay) {
+        return schedule(plugin, task, true, delay, 0);
+    }
+
+    @Override
+    public int runTaskTimer(Plugin plugin, Runnable task, long delay, long interval) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive");
+        return schedule(plugin, task, false, delay, interval);
+    }
+
+    @Override
+    public int runAsyncTaskTimer(Plugin plugin, Runnable task, long delay, long interval) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive");
+        return schedule(plugin, task, true, delay, interval);
+    }
+
+    private synchronized int schedule(Plugin plugin, Runnable runnable, boolean async, long delay, long interval) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkNotNull(runnable, "task");
+        Preconditions.checkArgument(delay >= 0, "Delay must not be negative");
+        Preconditions.checkArgument(plugin.isEnabled(), "Attempted to schedule a task for a disabled plugin");
+
+        // Ids wrap around eventually, so skip any that are still in use
+        int id;
+        do {
+            id = nextId;
+            nextId = nextId == Integer.MAX_VALUE ? 1 : nextId + 1;
+        } while (tasks.containsKey(id));
+
+        // A delay of 0 runs the task on the next tick, as the current tick may already be over
+        Task task = new Task(id, plugin, runnable, async, interval);
+        task.deadline = currentTick + Math.max(delay, 1);
+        tasks.put(id, task);
+        pluginTasks.computeIfAbsent(plugin, p -> new HashSet<>()).add(task);
+        insert(task);
+        return id;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> callSync(Plugin plugin, Callable<T> task) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkNotNull(task, "task");
+        Preconditions.checkArgument(plugin.isEnabled(), "Attempted to schedule a task for a disabled plugin");
+
+        SyncCall<T> call = new SyncCall<>(plugin, task);
+        syncCalls.add(call);
+        return call.future;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(Plugin plugin, Supplier<T> task) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Preconditions.checkNotNull(task, "task");
+        Preconditions.checkArgument(plugin.isEnabled(), "Attempted to schedule a task for a disabled plugin");
+
+        AsyncCall<T> call = new AsyncCall<>(task);
+        if (!asyncExecutor.execute(plugin, call)) {
+            call.future.completeExceptionally(new RejectedExecutionException("Too many async tasks of plugin " + plugin.getPluginInfo().name() + " are queued"));
+        }
+        return call.future;
+    }
+
+    @Override
+    public synchronized boolean cancelTask(int id) {
+        Task task = tasks.get(id);
+        if (task == null) {
+            return false;
+        }
+
+        cancel(task);
+        return true;
+    }
+
+    @Override
+    public synchronized void cancelTasks(Plugin plugin) {
+        Preconditions.checkNotNull(plugin, "plugin");
+        Set<Task> owned = pluginTasks.get(plugin);
+        if (owned != null) {
+            new ArrayList<>(owned).forEach(this::cancel);
+        }
+        // Calls that never got to run would otherwise leave their callers waiting forever
+        for (Runnable discarded : asyncExecutor.remove(plugin)) {
+            if (discarded instanceof AsyncCall) {
+                ((AsyncCall<?>) discarded).future.cancel(false);
+            }
+        }
+    }
+
+    private void cancel(Task task) {
+        task.cancelled = true;
+        task.unlink();
+        remove(task);
+    }
+
+    private void remove(Task task) {
+        tasks.remove(task.id, task);
+        Set<Task> owned = pluginTasks.get(task.plugin);
+        if (owned != null && owned.remove(task) && owned.isEmpty()) {
+            pluginTasks.remove(task.plugin);
+        }
+    }
+
+    /**
+     * Advances the scheduler by one tick. Synchronous tasks that are due are
+     * run on the calling thread, which should be the server thread, within
+     * the tick budget if one is set.
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        List<Task> due = new ArrayList<>();
+        synchronized (this) {
+            currentTick++;
+            cascade();
+            wheels[0][(int) (currentTick & WHEEL_MASK)].drainTo(due);
+            for (Task task : due) {
+                if (!task.async) {
+                    continue;
+                }
+
+                if (task.interval == 0) {
+                    remove(task);
+                } else {
+                    // Asynchronous timers run at a fixed rate, even if a previous run hasn't finished
+                    task.deadline = currentTick + task.interval;
+                    insert(task);
+                }
+            }
+        }
+
+        runSyncCalls();
+        for (Task task : due) {
+            if (task.async) {
+                if (!asyncExecutor.execute(task.plugin, () -> run(task))) {
+                    server.getLogger().warning("Rejected async task " + task.id + " of plugin " + task.plugin.getPluginInfo().name()
+                            + " because too many of its tasks are queued");
+                }
+            } else {
+                defer(task, false);
+            }
+        }
+        runSyncTasks(start);
+    }
+
+    /**
+     * Runs the calls handed off with {@link #callSync(Plugin, Callable)}.
+     * Calls handed off while these run wait for the next tick. Handoffs are
+     * expected to be short, so they are not limited by the tick budget.
+     */
+    private void runSyncCalls() {
+        if (syncCalls.isEmpty()) {
+            return;
+        }
+
+        List<SyncCall<?>> calls = new ArrayList<>();
+        SyncCall<?> call;
+        while ((call = syncCalls.poll()) != null) {
+            calls.add(call);
+        }
+
+        TickProfiler profiler = trackingProfiler();
+        for (SyncCall<?> queued : calls) {
+            long start = profiler != null ? System.nanoTime() : 0;
+            queued.run();
+            if (profiler != null) {
+                profiler.recordPlugin(queued.plugin, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Queues a due synchronous task behind the other due tasks of its plugin.
+     */
+    private void defer(Task task, boolean first) {
+        ArrayDeque<Task> queue = deferred.get(task.plugin);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            deferred.put(task.plugin, queue);
+            rotation.add(task.plugin);
+        }
+
+        if (first) {
+            queue.addFirst(task);
+        } else {
+            queue.addLast(task);
+        }
+    }
+
+    /**
+     * Runs due synchronous tasks, taking one task from each plugin in turn,
+     * until none are left or the tick budget is used up. At least one task
+     * runs every tick, so that deferred tasks always make progress.
+     */
+    private void runSyncTasks(long start) {
+        long budget = tickBudgetNanos;
+        long deadline = budget > 0 ? start + budget : Long.MAX_VALUE;
+        List<Task> unfinished = new ArrayList<>();
+        TickProfiler profiler = trackingProfiler();
+        boolean ran = false;
+        while (!rotation.isEmpty() && !(ran && System.nanoTime() >= deadline)) {
+            Plugin plugin = rotation.poll();
+            ArrayDeque<Task> queue = deferred.get(plugin);
+            Task task = queue.poll();
+            if (queue.isEmpty()) {
+                deferred.remove(plugin);
+            } else {
+                rotation.add(plugin);
+            }
+            if (task.cancelled) {
+                continue;
+            }
+
+            ran = true;
+            long taskStart = profiler != null ? System.nanoTime() : 0;
+            boolean more = run(task, deadline);
+            if (profiler != null) {
+                profiler.recordPlugin(task.plugin, System.nanoTime() - taskStart);
+            }
+            if (more) {
+                unfinished.add(task);
+                continue;
+            }
+
+            // Due tasks stay registered until they have run, so an earlier task can still cancel them
+            synchronized (this) {
+                if (task.interval == 0) {
+                    remove(task);
+                } else if (!task.cancelled) {
+                    task.deadline = currentTick + task.interval;
+                    insert(task);
+                }
+            }
+        }
+
+        // Split tasks resume before anything else their plugin has queued
+        for (int i = unfinished.size() - 1; i >= 0; i--) {
+            defer(unfinished.get(i), true);
+        }
+        int count = 0;
+        for (ArrayDeque<Task> queue : deferred.values()) {
+            count += queue.size();
+        }
+        deferredTasks = count;
+    }
+
+    private TickProfiler trackingProfiler() {
+        TickProfiler profiler = server.getProfiler();
+        return profiler.isTrackingPlugins() ? profiler : null;
+    }
+
+    private void run(Task task) {
+        if (task.cancelled) {
+            return;
+        }
+
+        try {
+            task.runnable.run();
+        } catch (Throwable t) {
+            server.getLogger().log(Level.SEVERE, "Error while running task " + task.id + " of plugin " + task.plugin.getPluginInfo().name(), t);
+        }
+    }
+
+    /**
+     * Runs a synchronous task, or the next part of a {@link SplittableTask}.
+     *
+     * @return true if the task is split and has more work to do
+     */
+    private boolean run(Task task, long deadline) {
+        try {
+            if (task.runnable instanceof SplittableTask) {
+                return ((SplittableTask) task.runnable).run(deadline);
+            }
+            task.runnable.run();
+        } catch (Throwable t) {
+            server.getLogger().log(Level.SEVERE, "Error while running task " + task.id + " of plugin " + task.plugin.getPluginInfo().name(), t);
+        }
+        return false;
+    }
+
+    /**
+     * Moves the tasks of the next slot down one level, for every level whose
+     * lower levels have just wrapped around.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+
+            List<Task> moved = new ArrayList<>();
+            wheels[level][(int) ((currentTick >>> shift) & WHEEL_MASK)].drainTo(moved);
+            moved.forEach(this::insert);
+        }
+    }
+
+    /**
+     * Links a task into the lowest level whose range covers its deadline.
+     */
+    private void insert(Task task) {
+        int level = 0;
+        while (level < LEVELS - 1 && (task.deadline >>> (WHEEL_BITS * level)) - (currentTick >>> (WHEEL_BITS * level)) >= WHEEL_SIZE) {
+            level++;
+        }
+
+        int shift = WHEEL_BITS * level;
+        long slot = Math.min(task.deadline >>> shift, (currentTick >>> shift) + WHEEL_MASK);
+        // Tasks beyond the last level are parked in its furthest slot and placed again once it cascades
+        wheels[level][(int) (slot & WHEEL_MASK)].link(task);
+    }
+
+    /**
+     * Gets the number of ticks this scheduler has run.
+     *
+     * @return the current tick
+     */
+    public synchronized long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Gets the executor that runs asynchronous tasks, which holds the
+     * per-plugin limits and metrics.
+     *
+     * @return the async task executor
+     */
+    public AsyncTaskExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Gets the time synchronous tasks may take each tick.
+     *
+     * @param unit the unit of the returned budget
+     * @return the tick budget, or 0 if synchronous tasks are not limited
+     */
+    public long getTickBudget(TimeUnit unit) {
+        return unit.convert(tickBudgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the time synchronous tasks may take each tick. Once it has been
+     * used up, the remaining due tasks are deferred to the next tick.
+     *
+     * @param budget the tick budget, or 0 to run every due task each tick
+     * @param unit the unit of the budget
+     */
+    public void setTickBudget(long budget, TimeUnit unit) {
+        Preconditions.checkArgument(budget >= 0, "Budget must not be negative");
+        this.tickBudgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * Gets the number of synchronous tasks that were due but have been
+     * deferred because the previous tick ran out of budget.
+     *
+     * @return the number of deferred tasks
+     */
+    public int getDeferredTasks() {
+        return deferredTasks;
+    }
+
+    /**
+     * Gets the number of tasks that are waiting to run.
+     *
+     * @return the number of pending tasks
+     */
+    public synchronized int getPendingTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * A call handed off to the server thread, along with its future.
+     */
+    private static final class SyncCall<T> {
+
+        final Plugin plugin;
+        final Callable<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        SyncCall(Plugin plugin, Callable<T> task) {
+            this.plugin = plugin;
+            this.task = task;
+        }
+
+        void run() {
+            if (!plugin.isEnabled()) {
+                future.cancel(false);
+                return;
+            }
+
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private static final class AsyncCall<T> implements Runnable {
+
+        final Supplier<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        AsyncCall(Supplier<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task, which is also a node in the doubly linked list of its
+     * wheel slot. Each slot has a sentinel task as the head of its list.
+     */
+    private static final class Task {
+
+        final int id;
+        final Plugin plugin;
+        final Runnable runnable;
+        final boolean async;
+        final long interval;
+        long deadline;
+        volatile boolean cancelled;
+        Task prev;
+        Task next;
+
+        Task() {
+            this(0, null, null, false, 0);
+            this.prev = this;
+            this.next = this;
+        }
+
+        Task(int id, Plugin plugin, Runnable runnable, boolean async, long interval) {
+            this.id = id;
+            this.plugin = plugin;
+            this.runnable = runnable;
+            this.async = async;
+            this.interval = interval;
+        }
+
+        void link(Task task) {
+            task.prev = prev;
+            task.next = this;
+            prev.next = task;
+            prev = task;
+        }
+
+        void unlink() {
+            if (next == null) {
+                return;
+            }
+
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+
+        void drainTo(List<Task> result) {
+            for (Task task = next; task != this;) {
+                Task following = task.next;
+                task.prev = null;
+                task.next = null;
+                result.add(task);
+                task = following;
+            }
+            prev = this;
+            next = this;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.profiler;
+
+import com.ogarproject.ogar.api.plugin.Plugin;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A ProfilerSession records every tick between its start and its end, and
+ * summarizes them in a plain text report: the tick rate, tick duration
+ * percentiles, the time spent in each phase and plugin, and the slowest
+ * ticks.
+ */
+public final class ProfilerSession {
+
+    private static final TickPhase[] PHASES = TickPhase.values();
+    private static final int SLOWEST_TICKS = 10;
+
+    private final TickProfiler profiler;
+    private final Logger logger;
+    private final int durationTicks;
+    private final File reportFile;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private long stopNanos;
+    private final List<long[]> ticks = new ArrayList<>();
+    // Keyed by name, so a finished session doesn't keep unloaded plugins alive
+    private final Map<String, long[]> plugins = new HashMap<>();
+    private volatile boolean stopped = false;
+
+    ProfilerSession(TickProfiler profiler, Logger logger, int durationTicks, File reportFile) {
+        this.profiler = profiler;
+        this.logger = logger;
+        this.durationTicks = durationTicks;
+        this.reportFile = reportFile;
+    }
+
+    synchronized void recordPlugin(Plugin plugin, long nanos) {
+        if (stopped) {
+            return;
+        }
+
+        long[] totals = plugins.computeIfAbsent(plugin.getPluginInfo().name(), name -> new long[2]);
+        totals[0] += nanos;
+        totals[1] = Math.max(totals[1], nanos);
+    }
+
+    void recordTick(long tick, long duration, long[] phaseTimes) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+
+            long[] record = new long[2 + PHASES.length];
+            record[0] = tick;
+            record[1] = duration;
+            System.arraycopy(phaseTimes, 0, record, 2, PHASES.length);
+            ticks.add(record);
+        }
+
+        // This runs on the server thread, so the report is written in the background
+        if (durationTicks > 0 && getTicks() >= durationTicks && finish()) {
+            Thread writer = new Thread(this::writeReportFile, "Ogar profiler report");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops recording ticks. If the session was started with a report file,
+     * the report is written to it before this method returns.
+     */
+    public void stop() {
+        if (finish()) {
+            writeReportFile();
+        }
+    }
+
+    private boolean finish() {
+        synchronized (this) {
+            if (stopped) {
+                return false;
+            }
+            stopped = true;
+            stopNanos = System.nanoTime();
+        }
+        profiler.endSession(this);
+        return true;
+    }
+
+    private void writeReportFile() {
+        if (reportFile == null) {
+            return;
+        }
+
+        try {
+            writeReport(reportFile);
+            logger.info("Wrote profiler report to " + reportFile.getPath());
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not write profiler report to " + reportFile.getPath(), ex);
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Gets the number of ticks recorded so far.
+     *
+     * @return the number of ticks
+     */
+    public synchronized int getTicks() {
+        return ticks.size();
+    }
+
+    /**
+     * Writes the report of this session to a file, replacing the file if it
+     * exists.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file could not be written
+     */
+    public void writeReport(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(getReport());
+        }
+    }
+
+    /**
+     * Gets the report of this session. If the session is still running, the
+     * report covers the ticks recorded so far.
+     *
+     * @return the report as plain text
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        long elapsed = (stopped ? stopNanos : System.nanoTime()) - startNanos;
+        int count = ticks.size();
+        line(report, "Ogar tick profile, started %tF %<tT", startedAt);
+        line(report, "%d ticks in %.1f s (%.2f TPS)", count, elapsed / 1e9, count == 0 ? 0 : count * 1e9 / elapsed);
+        if (count == 0) {
+            return report.toString();
+        }
+
+        long total = 0;
+        long[] durations = new long[count];
+        long[] phaseTotals = new long[PHASES.length];
+        for (int i = 0; i < count; i++) {
+            long[] record = ticks.get(i);
+            durations[i] = record[1];
+            total += record[1];
+            for (int j = 0; j < PHASES.length; j++) {
+                phaseTotals[j] += record[2 + j];
+            }
+        }
+        long[] sorted = durations.clone();
+        Arrays.sort(sorted);
+        line(report, "");
+        line(report, "Tick duration (ms): mean %.2f, p50 %.2f, p95 %.2f, p99 %.2f, max %.2f", total / 1e6 / count,
+                percentile(sorted, 50) / 1e6, percentile(sorted, 95) / 1e6, percentile(sorted, 99) / 1e6, sorted[count - 1] / 1e6);
+
+        line(report, "");
+        line(report, "Phases (ms per tick, share of tick time):");
+        for (int j = 0; j < PHASES.length; j++) {
+            line(report, "  %-14s %8.3f  %5.1f%%", PHASES[j], phaseTotals[j] / 1e6 / count, total == 0 ? 0 : phaseTotals[j] * 100.0 / total);
+        }
+
+        line(report, "");
+        line(report, "Plugins (ms per tick, share of tick time, slowest tick in ms):");
+        if (plugins.isEmpty()) {
+            line(report, "  No plugin time recorded");
+        }
+        List<Map.Entry<String, long[]>> byTime = new ArrayList<>(plugins.entrySet());
+        byTime.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed());
+        for (Map.Entry<String, long[]> entry : byTime) {
+            long[] totals = entry.getValue();
+            line(report, "  %-24s %8.3f  %5.1f%%  %8.3f", entry.getKey(), totals[0] / 1e6 / count, total == 0 ? 0 : totals[0] * 100.0 / total, totals[1] / 1e6);
+        }
+
+        line(report, "");
+        line(report, "Slowest ticks (ms):");
+        List<long[]> slowest = new ArrayList<>(ticks);
+        slowest.sort(Comparator.comparingLong((long[] record) -> record[1]).reversed());
+        for (long[] record : slowest.subList(0, Math.min(SLOWEST_TICKS, slowest.size()))) {
+            StringBuilder phases = new StringBuilder();
+            for (int j = 0; j < PHASES.length; j++) {
+                if (record[2 + j] > 0) {
+                    phases.append(String.format(Locale.ROOT, " %s=%.2f", PHASES[j], record[2 + j] / 1e6));
+                }
+            }
+            line(report, "  tick %d: %.2f%s", record[0], record[1] / 1e6, phases);
+        }
+        return report.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    private static void line(StringBuilder report, String format, Object... args) {
+        report.append(String.format(Locale.ROOT, format, args)).append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.profiler;
+
+/**
+ * The phases of a server tick, as reported by the server to its
+ * {@link TickProfiler}.
+ */
+public enum TickPhase {
+
+    /**
+     * Moving cells and resolving collisions.
+     */
+    PHYSICS,
+    /**
+     * Calling events for what happened during the tick.
+     */
+    EVENTS,
+    /**
+     * Running synchronous scheduler tasks.
+     */
+    SYNC_TASKS,
+    /**
+     * Sending the tick's updates to clients.
+     */
+    NETWORK_FLUSH,
+    /**
+     * Anything the server did not attribute to another phase.
+     */
+    OTHER;
+}
@@ -0,0 +1,369 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.profiler;
+
+import com.google.common.base.Preconditions;
+import com.ogarproject.ogar.api.Server;
+import com.ogarproject.ogar.api.plugin.Plugin;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A TickProfiler measures how long server ticks take and where the time goes.
+ * The server marks the start and end of every tick and of each
+ * {@link TickPhase} within it; the profiler keeps a rolling window of recent
+ * ticks from which the tick rate, milliseconds per tick and percentiles are
+ * computed.
+ * <p>
+ * While plugin tracking is on, or a {@link ProfilerSession} is running, the
+ * plugin manager and scheduler also report the time spent in each plugin's
+ * event handlers and synchronous tasks.
+ */
+public class TickProfiler {
+
+    private static final TickPhase[] PHASES = TickPhase.values();
+
+    private final Server server;
+    private final int windowSize;
+    private final Window tickTimes;
+    private final Window tickStarts;
+    private final Window[] phaseTimes = new Window[PHASES.length];
+    private final Map<Plugin, Window> pluginTimes = new ConcurrentHashMap<>();
+    private final Map<Plugin, LongAdder> currentPluginTimes = new ConcurrentHashMap<>();
+    private volatile boolean trackingPlugins = false;
+    private volatile ProfilerSession session;
+
+    // Only used by the server thread
+    private final long[] currentPhaseTimes = new long[PHASES.length];
+    private long tickStart;
+    private long phaseStart;
+    private TickPhase phase;
+    private long tick = 0;
+
+    /**
+     * Creates a profiler that keeps the last 1200 ticks, one minute at 20
+     * ticks per second.
+     *
+     * @param server the server, used for logging
+     */
+    public TickProfiler(Server server) {
+        this(server, 1200);
+    }
+
+    /**
+     * Creates a profiler.
+     *
+     * @param server the server, used for logging
+     * @param windowSize the number of recent ticks that metrics are computed
+     * from
+     */
+    public TickProfiler(Server server, int windowSize) {
+        Preconditions.checkNotNull(server, "server");
+        Preconditions.checkArgument(windowSize > 1, "Window must hold more than one tick");
+        this.server = server;
+        this.windowSize = windowSize;
+        this.tickTimes = new Window(windowSize);
+        this.tickStarts = new Window(windowSize);
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseTimes[i] = new Window(windowSize);
+        }
+    }
+
+    /**
+     * Marks the start of a tick. Until the first call to
+     * {@link #startPhase(TickPhase)}, time is attributed to
+     * {@link TickPhase#OTHER}.
+     */
+    public void startTick() {
+        tickStart = System.nanoTime();
+        phaseStart = tickStart;
+        phase = TickPhase.OTHER;
+        Arrays.fill(currentPhaseTimes, 0);
+    }
+
+    /**
+     * Marks the start of a phase, which ends the previous phase.
+     *
+     * @param next the phase that starts now
+     */
+    public void startPhase(TickPhase next) {
+        Preconditions.checkNotNull(next, "next");
+        long now = System.nanoTime();
+        currentPhaseTimes[phase.ordinal()] += now - phaseStart;
+        phase = next;
+        phaseStart = now;
+    }
+
+    /**
+     * Marks the end of a tick and records its timings.
+     */
+    public void endTick() {
+        long now = System.nanoTime();
+        currentPhaseTimes[phase.ordinal()] += now - phaseStart;
+        long duration = now - tickStart;
+        tick++;
+
+        ProfilerSession current = session;
+        synchronized (this) {
+            tickTimes.add(duration);
+            tickStarts.add(tickStart);
+            for (int i = 0; i < PHASES.length; i++) {
+                phaseTimes[i].add(currentPhaseTimes[i]);
+            }
+            for (Map.Entry<Plugin, LongAdder> entry : currentPluginTimes.entrySet()) {
+                pluginTimes.computeIfAbsent(entry.getKey(), p -> new Window(windowSize));
+            }
+            for (Map.Entry<Plugin, Window> entry : pluginTimes.entrySet()) {
+                LongAdder time = currentPluginTimes.get(entry.getKey());
+                long nanos = time == null ? 0 : time.sumThenReset();
+                entry.getValue().add(nanos);
+                if (current != null && nanos > 0) {
+                    current.recordPlugin(entry.getKey(), nanos);
+                }
+            }
+        }
+
+        if (current != null) {
+            current.recordTick(tick, duration, currentPhaseTimes);
+        }
+    }
+
+    /**
+     * Checks if plugin time should be reported with
+     * {@link #recordPlugin(Plugin, long)}.
+     *
+     * @return true if plugin tracking is on or a session is running
+     */
+    public boolean isTrackingPlugins() {
+        return trackingPlugins || session != null;
+    }
+
+    /**
+     * Turns plugin tracking on or off. Tracking times every event handler and
+     * synchronous task, so it costs a little overhead on each of them.
+     *
+     * @param tracking whether to track plugin time
+     */
+    public void setTrackingPlugins(boolean tracking) {
+        this.trackingPlugins = tracking;
+    }
+
+    /**
+     * Adds time spent in a plugin during the current tick.
+     *
+     * @param plugin the plugin
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordPlugin(Plugin plugin, long nanos) {
+        currentPluginTimes.computeIfAbsent(plugin, p -> new LongAdder()).add(nanos);
+    }
+
+    /**
+     * Forgets the timings of a plugin, for example when it is unloaded.
+     *
+     * @param plugin the plugin
+     */
+    public synchronized void remove(Plugin plugin) {
+        pluginTimes.remove(plugin);
+        currentPluginTimes.remove(plugin);
+    }
+
+    /**
+     * Gets the number of ticks per second over the recent ticks.
+     *
+     * @return the tick rate, or 0 if fewer than two ticks were recorded
+     */
+    public synchronized double getTps() {
+        if (tickStarts.size < 2) {
+            return 0;
+        }
+        return (tickStarts.size - 1) * 1e9 / (tickStarts.newest() - tickStarts.oldest());
+    }
+
+    /**
+     * Gets the mean duration of the recent ticks, in milliseconds.
+     *
+     * @return the milliseconds per tick
+     */
+    public synchronized double getMspt() {
+        return tickTimes.mean() / 1e6;
+    }
+
+    /**
+     * Gets a percentile of the durations of the recent ticks.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the tick duration at the percentile, in nanoseconds
+     */
+    public synchronized long getTickPercentileNanos(double percentile) {
+        return tickTimes.percentile(percentile);
+    }
+
+    /**
+     * Gets the mean time per tick spent in a phase over the recent ticks.
+     *
+     * @param phase the phase
+     * @return the mean time per tick, in nanoseconds
+     */
+    public synchronized double getPhaseMeanNanos(TickPhase phase) {
+        return phaseTimes[phase.ordinal()].mean();
+    }
+
+    /**
+     * Gets a percentile of the time per tick spent in a phase over the recent
+     * ticks.
+     *
+     * @param phase the phase
+     * @param percentile the percentile, between 0 and 100
+     * @return the time per tick at the percentile, in nanoseconds
+     */
+    public synchronized long getPhasePercentileNanos(TickPhase phase, double percentile) {
+        return phaseTimes[phase.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * Gets the mean time per tick spent in a plugin over the recent ticks.
+     *
+     * @param plugin the plugin
+     * @return the mean time per tick, in nanoseconds, or 0 if no time was
+     * tracked for the plugin
+     */
+    public synchronized double getPluginMeanNanos(Plugin plugin) {
+        Window window = pluginTimes.get(plugin);
+        return window == null ? 0 : window.mean();
+    }
+
+    /**
+     * Gets a percentile of the time per tick spent in a plugin over the
+     * recent ticks.
+     *
+     * @param plugin the plugin
+     * @param percentile the percentile, between 0 and 100
+     * @return the time per tick at the percentile, in nanoseconds, or 0 if no
+     * time was tracked for the plugin
+     */
+    public synchronized long getPluginPercentileNanos(Plugin plugin, double percentile) {
+        Window window = pluginTimes.get(plugin);
+        return window == null ? 0 : window.percentile(percentile);
+    }
+
+    /**
+     * Starts a profiling session that records every tick until it is
+     * {@link ProfilerSession#stop() stopped}.
+     *
+     * @return the session
+     */
+    public ProfilerSession startSession() {
+        return startSession(0, null);
+    }
+
+    /**
+     * Starts a profiling session that stops by itself after a number of ticks
+     * and writes its report to a file from a background thread.
+     *
+     * @param ticks the number of ticks to profile, or 0 to profile until the
+     * session is stopped
+     * @param reportFile the file to write the report to when the session
+     * stops, or null to not write a report
+     * @return the session
+     */
+    public synchronized ProfilerSession startSession(int ticks, File reportFile) {
+        Preconditions.checkArgument(ticks >= 0, "Ticks must not be negative");
+        Preconditions.checkState(session == null, "A profiling session is already running");
+        session = new ProfilerSession(this, server.getLogger(), ticks, reportFile);
+        return session;
+    }
+
+    /**
+     * Gets the running profiling session.
+     *
+     * @return the session, or null if no session is running
+     */
+    public ProfilerSession getSession() {
+        return session;
+    }
+
+    synchronized void endSession(ProfilerSession ended) {
+        if (session == ended) {
+            session = null;
+        }
+    }
+
+    /**
+     * A ring buffer of the values of the most recent ticks.
+     */
+    private static final class Window {
+
+        final long[] values;
+        int next = 0;
+        int size = 0;
+
+        Window(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        /**
+         * Gets a value by its age, where 0 is the oldest value.
+         */
+        long get(int index) {
+            return values[(next - size + index + values.length) % values.length];
+        }
+
+        long oldest() {
+            return get(0);
+        }
+
+        long newest() {
+            return get(size - 1);
+        }
+
+        double mean() {
+            if (size == 0) {
+                return 0;
+            }
+
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += get(i);
+            }
+            return (double) total / size;
+        }
+
+        long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = get(i);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(size * Math.max(0, Math.min(100, percentile)) / 100);
+            return sorted[Math.max(rank - 1, 0)];
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * This file is part of Ogar.
+ *
+ * Ogar is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ogar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ogar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ogarproject.ogar.api.plugin;
+
+import com.google.common.io.ByteStreams;
+import com.ogarproject.ogar.api.Server;
+import com.ogarproject.ogar.api.profiler.TickProfiler;
+import com.ogarproject.ogar.api.world.World;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the dependency ordering of {@link PluginManager#enablePlugins()} and
+ * {@link PluginManager#disablePlugins()}, and that dependencies can't be
+ * unloaded from under their dependents.
+ */
+public class PluginDependencyTest {
+
+    private static final List<String> events = new ArrayList<>();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private PluginManager pluginManager;
+
+    @Before
+    public void setUp() {
+        events.clear();
+        pluginManager = new PluginManager(new TestServer());
+    }
+
+    @Test
+    public void softDependencyOnDependentIsIgnoredInEitherOrder() throws Throwable {
+        assertEnabled(true, HardOnY.class, SoftOnX.class);
+        setUp();
+        assertEnabled(true, SoftOnX.class, HardOnY.class);
+    }
+
+    @Test
+    public void softDependencyOnIndirectDependentIsIgnoredInEitherOrder() throws Throwable {
+        // Q depends on R, R soft-depends on S and S depends on Q
+        assertEnabled(true, IndirectQ.class, IndirectR.class, IndirectS.class);
+        setUp();
+        assertEnabled(true, IndirectR.class, IndirectS.class, IndirectQ.class);
+        setUp();
+        assertEnabled(true, IndirectS.class, IndirectQ.class, IndirectR.class);
+    }
+
+    @Test
+    public void hardCycleIsNotEnabled() throws Throwable {
+        assertEnabled(false, CycleA.class, CycleB.class);
+    }
+
+    @Test
+    public void dependenciesAreEnabledFirstAndDisabledLast() throws Throwable {
+        load(Dependent.class, Dependency.class);
+        pluginManager.enablePlugins();
+        assertEquals(Arrays.asList("enable Dependency", "enable Dependent"), events);
+
+        events.clear();
+        pluginManager.disablePlugins();
+        assertEquals(Arrays.asList("disable Dependent", "disable Dependency"), events);
+    }
+
+    @Test
+    public void disablePluginsSkipsPluginsThatWereNotEnabled() throws Throwable {
+        load(MissingDependency.class, Dependency.class);
+        pluginManager.enablePlugins();
+        assertFalse(pluginManager.getPlugin("MissingDependency").isEnabled());
+
+        pluginManager.disablePlugins();
+        assertFalse(pluginManager.getPlugin("Dependency").isEnabled());
+        assertTrue(events.contains("disable Dependency"));
+    }
+
+    @Test
+    public void pluginWithEnabledDependentsIsNotUnloaded() throws Throwable {
+        load(Dependent.class, Dependency.class);
+        pluginManager.enablePlugins();
+
+        Plugin dependency = pluginManager.getPlugin("Dependency");
+        try {
+            pluginManager.unloadPlugin(dependency);
+            fail("Unloaded a plugin with an enabled dependent");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(dependency.isEnabled());
+
+        pluginManager.unloadPlugin(pluginManager.getPlugin("Dependent"));
+        pluginManager.unloadPlugin(dependency);
+        assertNull(pluginManager.getPlugin("Dependency"));
+    }
+
+    @SafeVarargs
+    private final void assertEnabled(boolean expected, Class<? extends Plugin>... classes) throws Throwable {
+        load(classes);
+        pluginManager.enablePlugins();
+        for (Class<? extends Plugin> clazz : classes) {
+            String name = clazz.getAnnotation(PluginInfo.class).name();
+            assertEquals(name + " enabled", expected, pluginManager.getPlugin(name).isEnabled());
+        }
+    }
+
+    /**
+     * Loads each plugin class from its own indexed jar, in the specified
+     * order. The classes themselves are found on the test class path.
+     */
+    @SafeVarargs
+    private final void load(Class<? extends Plugin>... classes) throws Throwable {
+        for (Class<? extends Plugin> clazz : classes) {
+            PluginIndex index = new PluginIndex();
+            PluginIndex.PluginEntry entry = new PluginIndex.PluginEntry();
+            entry.mainClass = clazz.getName();
+            index.plugins.add(entry);
+
+            File jar = File.createTempFile(clazz.getSimpleName(), ".jar", folder.getRoot());
+            String resource = clazz.getName().replace('.', '/') + ".class";
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+                    InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+                out.putNextEntry(new JarEntry(PluginIndex.RESOURCE));
+                out.write(index.toJson().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+                out.putNextEntry(new JarEntry(resource));
+                ByteStreams.copy(in, out);
+                out.closeEntry();
+            }
+            pluginManager.loadPlugin(jar);
+        }
+    }
+
+    public abstract static class RecordingPlugin extends Plugin {
+
+        @Override
+        public void onEnable() {
+            events.add("enable " + getPluginInfo().name());
+        }
+
+        @Override
+        public void onDisable() {
+            events.add("disable " + getPluginInfo().name());
+        }
+    }
+
+    @PluginInfo(name = "HardOnY", version = "1", author = "Ogar", depends = "SoftOnX")
+    public static class HardOnY extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "SoftOnX", version = "1", author = "Ogar", softDepends = "HardOnY")
+    public static class SoftOnX extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "IndirectQ", version = "1", author = "Ogar", depends = "IndirectR")
+    public static class IndirectQ extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "IndirectR", version = "1", author = "Ogar", softDepends = "IndirectS")
+    public static class IndirectR extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "IndirectS", version = "1", author = "Ogar", depends = "IndirectQ")
+    public static class IndirectS extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "CycleA", version = "1", author = "Ogar", depends = "CycleB")
+    public static class CycleA extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "CycleB", version = "1", author = "Ogar", depends = "CycleA")
+    public static class CycleB extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "Dependent", version = "1", author = "Ogar", depends = "Dependency")
+    public static class Dependent extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "Dependency", version = "1", author = "Ogar")
+    public static class Dependency extends RecordingPlugin {
+    }
+
+    @PluginInfo(name = "MissingDependency", version = "1", author = "Ogar", depends = "NotLoaded")
+    public static class MissingDependency extends RecordingPlugin {
+    }
+
+    private static class TestServer implements Server {
+
+        private final Logger logger = Logger.getLogger("OgarTest");
+        private final PluginManager pluginManager = new PluginManager(this);
+        private final Messenger messenger = new Messenger(pluginManager);
+        private final TickProfiler profiler = new TickProfiler(this);
+        private final Scheduler scheduler = new Scheduler() {
+            @Override
+            public int runTaskLater(Plugin plugin, Runnable task, long delay) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int runAsyncTaskLater(Plugin plugin, Runnable task, long delay) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int runTaskTimer(Plugin plugin, Runnable task, long delay, long interval) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int runAsyncTaskTimer(Plugin plugin, Runnable task, long delay, long interval) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean cancelTask(int id) {
+                return false;
+            }
+
+            @Override
+            public void cancelTasks(Plugin plugin) {
+            }
+
+            @Override
+            public <T> CompletableFuture<T> callSync(Plugin plugin, Callable<T> task) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T> CompletableFuture<T> supplyAsync(Plugin plugin, Supplier<T> task) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        TestServer() {
+            logger.setLevel(Level.OFF);
+        }
+
+        @Override
+        public Logger getLogger() {
+            return logger;
+        }
+
+        @Override
+        public PluginManager getPluginManager() {
+            return pluginManager;
+        }
+
+        @Override
+        public Messenger getMessenger() {
+            return messenger;
+        }
+
+        @Override
+        public World getWorld() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Scheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public TickProfiler getProfiler() {
+            return profiler;
+        }
+    }
+}